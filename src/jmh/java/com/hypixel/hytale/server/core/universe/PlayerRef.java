@@ -0,0 +1,19 @@
+package com.hypixel.hytale.server.core.universe;
+
+import java.util.UUID;
+
+/**
+ * Benchmark-only stand-in for the server's PlayerRef, so the universe-scan baseline runs without Hytale.
+ */
+public class PlayerRef {
+
+    private final UUID uuid;
+
+    public PlayerRef(UUID uuid) {
+        this.uuid = uuid;
+    }
+
+    public UUID getUuid() {
+        return uuid;
+    }
+}
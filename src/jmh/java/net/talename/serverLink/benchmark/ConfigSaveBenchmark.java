@@ -0,0 +1,49 @@
+package net.talename.serverLink.benchmark;
+
+import net.talename.serverLink.config.ConfigManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * {@link ConfigManager#saveConfig()} through to disk, as on link/unlink and shutdown. The config does not grow
+ * with player count, so unlike the other benchmarks this one has no players parameter.
+ */
+@State(Scope.Benchmark)
+public class ConfigSaveBenchmark {
+
+    private Path dataDirectory;
+    private ConfigManager configManager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDirectory = Files.createTempDirectory("serverlink-bench");
+        configManager = new ConfigManager(dataDirectory, Logger.getLogger("TaleName-Bench"));
+        configManager.loadConfig();
+        configManager.setLinkData("bench-token", 1L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        configManager.close();
+        try (Stream<Path> files = Files.walk(dataDirectory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void saveConfig() {
+        configManager.saveConfig();
+        configManager.flush(10_000);
+    }
+}
@@ -0,0 +1,77 @@
+package net.talename.serverLink.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import net.talename.serverLink.api.HeartbeatEncoder;
+import net.talename.serverLink.api.PayloadBuffer;
+import net.talename.serverLink.api.PayloadCompressor;
+import net.talename.serverLink.api.TaleNameAPI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Heartbeat body serialization as done by {@link TaleNameAPI}, compared with the original
+ * JsonObject-tree approach.
+ */
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int players;
+
+    private final Gson gson = new Gson();
+    private final HeartbeatEncoder encoder = new HeartbeatEncoder();
+    private final PayloadCompressor compressor = new PayloadCompressor();
+    private final PayloadBuffer buffer = new PayloadBuffer(4096);
+    private final PayloadBuffer compressed = new PayloadBuffer(4096);
+    private TaleNameAPI.HeartbeatData data;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<UUID> playerList = new ArrayList<>(players);
+        for (int i = 0; i < players; i++) {
+            playerList.add(UUID.randomUUID());
+        }
+        data = new TaleNameAPI.HeartbeatData(players, players, "A Hytale server", playerList, 42, -1, null, null);
+    }
+
+    @Benchmark
+    public byte[] gsonTree() {
+        JsonObject body = new JsonObject();
+        body.addProperty("playersOnline", data.playersOnline());
+        body.addProperty("maxPlayers", data.maxPlayers());
+        body.add("playerList", gson.toJsonTree(data.playerList()));
+        return gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int streamingJson() {
+        buffer.reset();
+        encoder.writeHeartbeatJson(data, buffer);
+        return buffer.length();
+    }
+
+    @Benchmark
+    public int streamingBinary() {
+        buffer.reset();
+        encoder.writeHeartbeatBinary(data, buffer);
+        return buffer.length();
+    }
+
+    @Benchmark
+    public int streamingJsonGzip() {
+        buffer.reset();
+        encoder.writeHeartbeatJson(data, buffer);
+        compressor.gzip(buffer, compressed);
+        return compressed.length();
+    }
+}
@@ -0,0 +1,70 @@
+package net.talename.serverLink.benchmark;
+
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import net.talename.serverLink.service.PlayerIndex;
+import net.talename.serverLink.service.PresenceDeltaTracker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Cost of producing the player list for one heartbeat: the old per-heartbeat universe scan
+ * versus the event-driven {@link PlayerIndex} and the delta computation on top of it.
+ */
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int players;
+
+    private List<PlayerRef> universePlayers;
+    private PlayerIndex index;
+    private PresenceDeltaTracker tracker;
+    private UUID churnPlayer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        universePlayers = new ArrayList<>(players);
+        index = new PlayerIndex();
+        for (int i = 0; i < players; i++) {
+            UUID uuid = UUID.randomUUID();
+            universePlayers.add(new PlayerRef(uuid));
+            index.playerJoined(uuid);
+        }
+        churnPlayer = UUID.randomUUID();
+
+        tracker = new PresenceDeltaTracker();
+        PresenceDeltaTracker.Presence baseline = tracker.next(index.snapshot().players(), true);
+        tracker.acknowledge(baseline, true);
+    }
+
+    @Benchmark
+    public List<UUID> universeScan() {
+        return universePlayers.stream().map(PlayerRef::getUuid).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public PlayerIndex.Snapshot indexSnapshotUnchanged() {
+        return index.snapshot();
+    }
+
+    @Benchmark
+    public PlayerIndex.Snapshot indexSnapshotAfterChurn() {
+        index.playerJoined(churnPlayer);
+        index.playerLeft(churnPlayer);
+        return index.snapshot();
+    }
+
+    @Benchmark
+    public PresenceDeltaTracker.Presence deltaAgainstBaseline() {
+        return tracker.next(index.snapshot().players(), true);
+    }
+}
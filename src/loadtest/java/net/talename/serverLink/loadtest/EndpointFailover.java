@@ -0,0 +1,104 @@
+package net.talename.serverLink.loadtest;
+
+import net.talename.serverLink.PluginExecutors;
+import net.talename.serverLink.api.HttpTransport;
+import net.talename.serverLink.api.TaleNameAPI;
+import net.talename.serverLink.config.ConfigManager;
+import net.talename.serverLink.service.LinkMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks multi-endpoint routing against two {@link FakeApiServer}s: a hedged link beats a stalled primary,
+ * probed heartbeats go to the faster endpoint, and traffic fails over once that endpoint goes down.
+ */
+class EndpointFailover {
+
+    private static final long SLOW_MILLIS = 150;
+    private static final long HEDGE_MILLIS = 300;
+    private static final int HEARTBEATS = 20;
+
+    private final Logger logger = Logger.getLogger("TaleName-Failover");
+    private FakeApiServer primary;
+    private FakeApiServer secondary;
+    private PluginExecutors executors;
+    private ConfigManager config;
+    private HttpTransport transport;
+    private TaleNameAPI api;
+
+    @BeforeEach
+    void start() throws IOException {
+        // The primary stalls for linking; the secondary is fast throughout until it is stopped.
+        primary = new FakeApiServer(0).latency(HEDGE_MILLIS * 10, 0).start();
+        secondary = new FakeApiServer(0).latency(2, 2).start();
+        Path dataDirectory = Files.createTempDirectory("talename-failover");
+        Files.writeString(dataDirectory.resolve("serverlink.json"), "{"
+                + "\"apiUrls\":[\"" + primary.baseUrl() + "\",\"" + secondary.baseUrl() + "\"],"
+                + "\"linkHedgeDelayMillis\":" + HEDGE_MILLIS
+                + "}");
+
+        executors = new PluginExecutors();
+        config = new ConfigManager(dataDirectory, logger, executors.scheduler(), executors.io());
+        config.loadConfig();
+        transport = new HttpTransport(config, logger, executors.io(), executors.scheduler());
+        transport.startProbing();
+        api = new TaleNameAPI(config, transport, new LinkMetrics());
+    }
+
+    @AfterEach
+    void stop() {
+        transport.shutdown();
+        config.close();
+        executors.shutdown(5000);
+        primary.stop();
+        secondary.stop();
+    }
+
+    @Test
+    void hedgesRoutesAndFailsOver() throws InterruptedException {
+        long started = System.nanoTime();
+        TaleNameAPI.LinkResponse link = api.linkServer("FAILOVER",
+                new TaleNameAPI.ServerInfo("failover", "test", "test", 10)).join();
+        long linkMillis = (System.nanoTime() - started) / 1_000_000;
+        assertTrue(link.success(), "link failed: " + link.message());
+        assertEquals(1, secondary.getLinks(), "link was not answered by the hedged request");
+        assertTrue(linkMillis < SLOW_MILLIS + HEDGE_MILLIS * 5, "hedged link took " + linkMillis + "ms");
+
+        config.setLinkData(link.serverToken(), link.serverId());
+        primary.latency(SLOW_MILLIS, 0);
+        // Probe both endpoints now rather than waiting for the next round.
+        transport.prewarm();
+        Thread.sleep(SLOW_MILLIS * 3);
+
+        send(link.serverToken());
+        assertTrue(secondary.getHeartbeats() >= HEARTBEATS - 1, "heartbeats did not go to the faster endpoint: "
+                + "primary " + primary.getHeartbeats() + ", secondary " + secondary.getHeartbeats());
+
+        secondary.stop();
+        int delivered = send(link.serverToken());
+        // The breaker opens after a few failures; everything after that must reach the primary.
+        assertTrue(delivered >= HEARTBEATS - 3, "traffic did not fail over to the remaining endpoint: "
+                + delivered + " of " + HEARTBEATS + " delivered");
+    }
+
+    private int send(String token) {
+        int delivered = 0;
+        for (int i = 0; i < HEARTBEATS; i++) {
+            TaleNameAPI.HeartbeatData data = new TaleNameAPI.HeartbeatData(1, 10, "failover",
+                    List.of(UUID.randomUUID()), i, -1, null, null);
+            if (api.sendHeartbeat(token, data).join().success()) delivered++;
+        }
+        return delivered;
+    }
+}
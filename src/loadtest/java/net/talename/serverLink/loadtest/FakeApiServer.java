@@ -0,0 +1,230 @@
+package net.talename.serverLink.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.talename.serverLink.api.PayloadCompressor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stand-in for the TaleName API on {@code com.sun.net.httpserver}. Implements link and heartbeat with
+ * injectable latency and error, 401 and 429 rates, so the client can be exercised without api.talename.net.
+ *
+ * <p>Run standalone with {@code --port}, {@code --latency}, {@code --jitter}, {@code --errors},
+ * {@code --unauthorized}, {@code --rate-limited} and {@code --binary}; rates are fractions between 0 and 1.
+ */
+public class FakeApiServer {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong nextServerId = new AtomicLong(1);
+    private final Map<String, Long> linkedKeys = new ConcurrentHashMap<>();
+    private final LongAdder links = new LongAdder();
+    private final LongAdder heartbeats = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+    private volatile double errorRate;
+    private volatile double unauthorizedRate;
+    private volatile double rateLimitedRate;
+    private volatile int retryAfterSeconds = 5;
+    private volatile boolean acceptBinary;
+
+    public FakeApiServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.setExecutor(executor);
+        server.createContext("/serverlinker/link", this::handleLink);
+        server.createContext("/serverlinker/heartbeat", this::handleHeartbeat);
+        // Pre-warm and endpoint probes from HttpTransport, which see the injected latency and errors like any request.
+        // Anything else, such as the presence channel, is not implemented.
+        server.createContext("/", this::handleRoot);
+    }
+
+    public FakeApiServer start() {
+        server.start();
+        return this;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    public String baseUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort();
+    }
+
+    public FakeApiServer latency(long millis, long jitter) {
+        this.latencyMillis = millis;
+        this.jitterMillis = jitter;
+        return this;
+    }
+
+    public FakeApiServer errorRate(double rate) {
+        this.errorRate = rate;
+        return this;
+    }
+
+    public FakeApiServer unauthorizedRate(double rate) {
+        this.unauthorizedRate = rate;
+        return this;
+    }
+
+    public FakeApiServer rateLimitedRate(double rate, int retryAfterSeconds) {
+        this.rateLimitedRate = rate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    public FakeApiServer acceptBinary(boolean accept) {
+        this.acceptBinary = accept;
+        return this;
+    }
+
+    public long getLinks() {
+        return links.sum();
+    }
+
+    public long getHeartbeats() {
+        return heartbeats.sum();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    private void handleRoot(HttpExchange exchange) throws IOException {
+        if (!"HEAD".equals(exchange.getRequestMethod())) {
+            respond(exchange, 404, null);
+            return;
+        }
+        if (!delayOrFail(exchange, false)) return;
+        respond(exchange, 200, null);
+    }
+
+    private void handleLink(HttpExchange exchange) throws IOException {
+        readBody(exchange);
+        if (!delayOrFail(exchange, false)) return;
+        // A retried link carries the same key and gets the same server back.
+        String key = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+        Long replayed = key == null ? null : linkedKeys.get(key);
+        long id;
+        if (replayed != null) {
+            id = replayed;
+        } else {
+            id = nextServerId.getAndIncrement();
+            links.increment();
+            if (key != null) linkedKeys.putIfAbsent(key, id);
+        }
+        respond(exchange, 200, "{\"serverToken\":\"fake-token-" + id + "\",\"serverId\":" + id
+                + ",\"message\":\"Linked to fake API\"}");
+    }
+
+    private void handleHeartbeat(HttpExchange exchange) throws IOException {
+        byte[] body = readBody(exchange);
+        if (!delayOrFail(exchange, true)) return;
+
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (!acceptBinary && contentType != null && contentType.startsWith("application/x-talename-heartbeat")) {
+            respond(exchange, 415, "{\"error\":\"Unsupported heartbeat format\"}");
+            return;
+        }
+        if (body.length == 0) {
+            respond(exchange, 400, "{\"error\":\"Empty heartbeat\"}");
+            return;
+        }
+        heartbeats.increment();
+
+        String path = exchange.getRequestURI().getPath();
+        if (path.endsWith("/batch")) {
+            // One result per member is enough for the client; the fake does not parse the batch.
+            respond(exchange, 200, "{\"results\":[{\"status\":200,\"deltaSupported\":true}]}");
+        } else {
+            respond(exchange, 200, "{\"status\":200,\"deltaSupported\":true}");
+        }
+    }
+
+    /** @return false if a fault was injected and the exchange is already answered */
+    private boolean delayOrFail(HttpExchange exchange, boolean heartbeat) throws IOException {
+        long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < errorRate) {
+            respond(exchange, 500, "{\"error\":\"Injected failure\"}");
+            return false;
+        }
+        roll -= errorRate;
+        if (heartbeat && roll < unauthorizedRate) {
+            respond(exchange, 401, "{\"error\":\"Invalid server token\"}");
+            return false;
+        }
+        roll -= unauthorizedRate;
+        if (heartbeat && roll < rateLimitedRate) {
+            exchange.getResponseHeaders().set("Retry-After", Integer.toString(retryAfterSeconds));
+            respond(exchange, 429, "{\"error\":\"Rate limited\"}");
+            return false;
+        }
+        return true;
+    }
+
+    private byte[] readBody(HttpExchange exchange) throws IOException {
+        byte[] raw;
+        try (InputStream in = exchange.getRequestBody()) {
+            raw = in.readAllBytes();
+        }
+        bytesReceived.add(raw.length);
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            return PayloadCompressor.gunzip(raw);
+        }
+        return raw;
+    }
+
+    private void respond(HttpExchange exchange, int status, String json) throws IOException {
+        if (acceptBinary) {
+            exchange.getResponseHeaders().set("Accept-Post", "application/json, application/x-talename-heartbeat");
+        }
+        byte[] bytes = json != null ? json.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (json != null) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+        }
+        boolean head = "HEAD".equals(exchange.getRequestMethod());
+        exchange.sendResponseHeaders(status, head || bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (!head) out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Args options = new Args(args);
+        FakeApiServer server = new FakeApiServer(options.intValue("port", 8089))
+                .latency(options.longValue("latency", 0), options.longValue("jitter", 0))
+                .errorRate(options.doubleValue("errors", 0))
+                .unauthorizedRate(options.doubleValue("unauthorized", 0))
+                .rateLimitedRate(options.doubleValue("rate-limited", 0), options.intValue("retry-after", 5))
+                .acceptBinary(options.flag("binary"))
+                .start();
+        System.out.println("Fake TaleName API listening on " + server.baseUrl());
+        System.out.println("Set \"apiUrl\": \"" + server.baseUrl() + "\" in serverlink.json to use it.");
+    }
+}
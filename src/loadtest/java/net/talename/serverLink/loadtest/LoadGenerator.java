@@ -0,0 +1,287 @@
+package net.talename.serverLink.loadtest;
+
+import net.talename.serverLink.api.HttpTransport;
+import net.talename.serverLink.api.TaleNameAPI;
+import net.talename.serverLink.config.ConfigManager;
+import net.talename.serverLink.service.HeartbeatCycle;
+import net.talename.serverLink.service.LatencyHistogram;
+import net.talename.serverLink.service.LinkMetrics;
+import net.talename.serverLink.service.PresenceDeltaTracker;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Simulates a fleet of linked servers, each running the plugin's {@link HeartbeatCycle} (delta presence, pacing,
+ * backoff, server-directed delays) and relinking when its token is rejected, with its own {@link TaleNameAPI},
+ * against the {@link FakeApiServer} or any {@code --url}. Reports throughput, tail latency, and CPU and allocation per heartbeat.
+ *
+ * <p>Intervals are in seconds but can be as short as 1 to compress time. CPU and allocation cover the whole JVM,
+ * so with the embedded fake API they include the server side; point {@code --url} at a separately started
+ * {@link FakeApiServer} for client-only numbers.
+ */
+public class LoadGenerator {
+
+    private static final long REPORT_INTERVAL_MILLIS = 10_000;
+
+    private final int servers;
+    private final int playersPerServer;
+    private final int churnPerHeartbeat;
+    private final long durationMillis;
+    private final List<TransportSlot> transports = new ArrayList<>();
+    private final LinkMetrics metrics = new LinkMetrics();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder ok = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder unauthorized = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder relinks = new LongAdder();
+
+    private LoadGenerator(Args args, String baseUrl, Path dataDirectory) throws IOException {
+        this.servers = args.intValue("servers", 2000);
+        this.playersPerServer = args.intValue("players", 50);
+        this.churnPerHeartbeat = args.intValue("churn", 2);
+        this.durationMillis = TimeUnit.SECONDS.toMillis(args.longValue("duration", 60));
+
+        int interval = args.intValue("interval", 5);
+        Files.writeString(dataDirectory.resolve("serverlink.json"), "{"
+                + "\"apiUrl\":\"" + baseUrl + "\","
+                + "\"heartbeatIntervalSeconds\":" + interval + ","
+                + "\"minHeartbeatIntervalSeconds\":" + Math.max(1, interval / 5) + ","
+                + "\"maxHeartbeatIntervalSeconds\":" + interval * 3 + ","
+                + "\"binaryHeartbeats\":" + !args.flag("json-only")
+                + "}");
+
+        Logger logger = Logger.getLogger("TaleName-LoadTest");
+        logger.setLevel(Level.WARNING);
+        // Real servers each own a client; a handful shared round-robin keeps thousands of simulated ones affordable.
+        int clients = Math.max(1, args.intValue("clients", 16));
+        for (int i = 0; i < clients; i++) {
+            ConfigManager config = new ConfigManager(dataDirectory, logger);
+            config.loadConfig();
+            transports.add(new TransportSlot(config, new HttpTransport(config, logger)));
+        }
+    }
+
+    public static void main(String[] argv) throws Exception {
+        Args args = new Args(argv);
+        String url = args.string("url", null);
+        FakeApiServer fake = null;
+        if (url == null) {
+            fake = new FakeApiServer(0)
+                    .latency(args.longValue("latency", 20), args.longValue("jitter", 10))
+                    .errorRate(args.doubleValue("errors", 0))
+                    .unauthorizedRate(args.doubleValue("unauthorized", 0))
+                    .rateLimitedRate(args.doubleValue("rate-limited", 0), args.intValue("retry-after", 5))
+                    .acceptBinary(!args.flag("json-only"))
+                    .start();
+            url = fake.baseUrl();
+        }
+
+        Path dataDirectory = Files.createTempDirectory("talename-loadtest");
+        LoadGenerator generator = new LoadGenerator(args, url, dataDirectory);
+        System.out.println("Simulating " + generator.servers + " servers x " + generator.playersPerServer
+                + " players against " + url + (fake != null ? " (embedded fake API)" : ""));
+        try {
+            generator.run();
+        } finally {
+            generator.transports.forEach(slot -> {
+                slot.transport().shutdown();
+                slot.config().close();
+            });
+            if (fake != null) fake.stop();
+        }
+    }
+
+    private void run() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long startCpu = processCpuNanos();
+        long startAllocated = allocatedBytes();
+        long startNanos = System.nanoTime();
+
+        try (ExecutorService fleet = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < servers; i++) {
+                TransportSlot slot = transports.get(i % transports.size());
+                fleet.execute(new SimulatedServer(slot, deadline)::run);
+            }
+
+            long lastReport = System.nanoTime();
+            long lastCount = 0;
+            while (System.nanoTime() < deadline) {
+                Thread.sleep(Math.min(REPORT_INTERVAL_MILLIS,
+                        Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()))));
+                long now = System.nanoTime();
+                long count = ok.sum() + failed.sum();
+                double seconds = (now - lastReport) / 1e9;
+                System.out.printf("  %6.0fs  %8.1f heartbeats/s  p99 %s%n", (now - startNanos) / 1e9,
+                        (count - lastCount) / seconds, millis(latency.percentileNanos(0.99)));
+                lastReport = now;
+                lastCount = count;
+            }
+        }
+
+        double elapsed = (System.nanoTime() - startNanos) / 1e9;
+        long total = ok.sum() + failed.sum();
+        long cpu = processCpuNanos() - startCpu;
+        long allocated = allocatedBytes() - startAllocated;
+
+        System.out.println("=== Results ===");
+        System.out.printf("Heartbeats: %d in %.1fs (%.1f/s), %d ok, %d failed (%d 401, %d 429), %d relinks%n",
+                total, elapsed, total / elapsed, ok.sum(), failed.sum(), unauthorized.sum(), rateLimited.sum(),
+                relinks.sum());
+        System.out.println("Latency: p50 " + millis(latency.percentileNanos(0.5)) + ", p90 "
+                + millis(latency.percentileNanos(0.9)) + ", p99 " + millis(latency.percentileNanos(0.99))
+                + ", p99.9 " + millis(latency.percentileNanos(0.999)) + ", max " + millis(latency.maxNanos()));
+        if (total > 0) {
+            System.out.printf("CPU: %.1f us/heartbeat (%.0f%% of one core)%n",
+                    cpu / 1000.0 / total, cpu / 1e9 / elapsed * 100);
+            if (allocated >= 0) {
+                System.out.printf("Allocation: %.1f KB/heartbeat%n", allocated / 1024.0 / total);
+            }
+        }
+        metrics.summaryLines().forEach(System.out::println);
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1fms", nanos / 1e6);
+    }
+
+    private static long processCpuNanos() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported()) {
+            return threads.getTotalThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    private record TransportSlot(ConfigManager config, HttpTransport transport) {}
+
+    /** One server running the plugin's {@link HeartbeatCycle}, with random joins and leaves instead of a game server. */
+    private final class SimulatedServer {
+
+        private final TaleNameAPI api;
+        private final HeartbeatCycle cycle;
+        private final long deadline;
+        private final Set<UUID> online = new HashSet<>();
+        private final List<UUID> onlineList = new ArrayList<>();
+        private String token;
+        private int linkFailures;
+        private int pendingChurn;
+
+        SimulatedServer(TransportSlot slot, long deadline) {
+            this.api = new TaleNameAPI(slot.config(), slot.transport(), metrics);
+            this.cycle = new HeartbeatCycle(slot.config(), Logger.getLogger("TaleName-LoadTest"));
+            this.deadline = deadline;
+            for (int i = 0; i < playersPerServer; i++) {
+                addPlayer();
+            }
+        }
+
+        void run() {
+            try {
+                sleepMillis(cycle.pacer().startOffsetMillis());
+                while (System.nanoTime() < deadline) {
+                    if (token == null && !link()) {
+                        sleepMillis(cycle.pacer().backoffMillis(++linkFailures));
+                        continue;
+                    }
+                    long waitMillis = cycle.millisUntilDue(pendingChurn, online.size(), false);
+                    if (waitMillis > 0) {
+                        sleepMillis(waitMillis);
+                        continue;
+                    }
+                    heartbeat();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private boolean link() {
+            TaleNameAPI.LinkResponse response = api.linkServer("LOADTEST",
+                    new TaleNameAPI.ServerInfo("loadtest", "TaleName-LoadGenerator", "Load test", playersPerServer))
+                    .join();
+            if (!response.success()) return false;
+            token = response.serverToken();
+            linkFailures = 0;
+            cycle.reset();
+            return true;
+        }
+
+        private void heartbeat() {
+            int churn = pendingChurn;
+            HeartbeatCycle.Send send = cycle.begin(online, false);
+            PresenceDeltaTracker.Presence presence = send.presence();
+            TaleNameAPI.HeartbeatData data = send.countOnly()
+                    ? new TaleNameAPI.HeartbeatData(online.size(), playersPerServer, "Load test", null,
+                            presence.sequence(), -1, null, null)
+                    : new TaleNameAPI.HeartbeatData(online.size(), playersPerServer, "Load test",
+                            presence.isDelta() ? null : new ArrayList<>(presence.online()),
+                            presence.sequence(), presence.baseSequence(), presence.joined(), presence.left());
+
+            long started = System.nanoTime();
+            TaleNameAPI.HeartbeatResponse response = api.sendHeartbeat(token, data).join();
+            latency.record(System.nanoTime() - started);
+
+            HeartbeatCycle.Outcome outcome = cycle.onResponse(send, response);
+            if (response.success()) {
+                ok.increment();
+            } else {
+                failed.increment();
+                if ("Rate limited".equals(response.message())) {
+                    rateLimited.increment();
+                }
+            }
+            if (outcome == HeartbeatCycle.Outcome.TOKEN_REJECTED) {
+                unauthorized.increment();
+                relinks.increment();
+                token = null;
+            }
+            cycle.onFinished(response.success(), churn);
+            // Players come and go while the next heartbeat is pending, which is what paces it.
+            pendingChurn = churn();
+        }
+
+        private int churn() {
+            int changes = churnPerHeartbeat > 0 ? ThreadLocalRandom.current().nextInt(churnPerHeartbeat + 1) : 0;
+            for (int i = 0; i < changes && !onlineList.isEmpty(); i++) {
+                UUID leaving = onlineList.remove(ThreadLocalRandom.current().nextInt(onlineList.size()));
+                online.remove(leaving);
+                addPlayer();
+            }
+            return changes * 2;
+        }
+
+        private void addPlayer() {
+            UUID player = UUID.randomUUID();
+            online.add(player);
+            onlineList.add(player);
+        }
+
+        private void sleepMillis(long millis) throws InterruptedException {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            Thread.sleep(Math.max(0, Math.min(millis, remaining)));
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package net.talename.serverLink.loadtest;
+
+import net.talename.serverLink.PluginExecutors;
+import net.talename.serverLink.PluginRuntime;
+import net.talename.serverLink.StartupTimer;
+import net.talename.serverLink.api.TaleNameAPI;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Starts and stops the {@link PluginRuntime} over and over, as plugin reloads do: executors, config writer and
+ * watcher, HTTP transport with traffic against the {@link FakeApiServer}, heartbeat service with its presence
+ * channel, aggregator, status endpoint, health sampler and metrics exporter. Fails if a reload leaves tasks on
+ * either executor once every component has stopped, if the executors do not shut down in time, or if live
+ * platform threads grow across reloads. Virtual threads are invisible to {@link Thread#getAllStackTraces()}; the
+ * plugin only starts them through {@code io()}, whose tasks {@link PluginExecutors#getLiveTaskCount()} counts.
+ *
+ * <p>System properties: {@code talename.soak.reloads} (default 50), {@code talename.soak.heartbeats} per reload
+ * (default 20).
+ */
+class ReloadSoak {
+
+    // JIT and GC threads can come and go on their own; anything beyond this is a leak.
+    private static final int THREAD_TOLERANCE = 4;
+
+    private final Logger logger = Logger.getLogger("TaleName-Soak");
+    private FakeApiServer fake;
+    private Path dataDirectory;
+
+    @BeforeEach
+    void startApi() throws IOException {
+        fake = new FakeApiServer(0).latency(2, 2).start();
+        dataDirectory = Files.createTempDirectory("talename-soak");
+        // Linked from the start, so every reload takes the linked start-up path. The fake API has no presence
+        // endpoint, so the channel exercises its connect, fallback and stop path.
+        Files.writeString(dataDirectory.resolve("serverlink.json"), "{"
+                + "\"apiUrl\":\"" + fake.baseUrl() + "\","
+                + "\"serverToken\":\"soak-token\","
+                + "\"serverId\":1,"
+                + "\"networkMode\":\"aggregator\","
+                + "\"aggregatorPort\":" + freePort() + ","
+                + "\"presenceChannel\":true,"
+                + "\"statusEndpoint\":true,"
+                + "\"statusPort\":" + freePort() + ","
+                + "\"healthSampleIntervalMillis\":100"
+                + "}");
+        logger.setLevel(Level.WARNING);
+    }
+
+    @AfterEach
+    void stopApi() {
+        fake.stop();
+    }
+
+    @Test
+    void reloadsLeaveNothingRunning() throws InterruptedException {
+        int reloads = Integer.getInteger("talename.soak.reloads", 50);
+        int heartbeats = Integer.getInteger("talename.soak.heartbeats", 20);
+
+        int baseline = -1;
+        for (int i = 1; i <= reloads; i++) {
+            reload(i, heartbeats);
+            int threads = settledThreadCount();
+            if (i == 3) {
+                // The first reloads start JDK-wide threads (HTTP client, file watcher) that live for the JVM.
+                baseline = threads;
+            }
+            if (baseline >= 0 && threads > baseline + THREAD_TOLERANCE) {
+                throw new AssertionError(threads + " live threads after reload " + i + ", baseline " + baseline
+                        + "\n" + describeThreads());
+            }
+        }
+    }
+
+    private void reload(int reload, int heartbeats) throws InterruptedException {
+        PluginRuntime runtime = new PluginRuntime(dataDirectory, logger, new SoakHost());
+        runtime.start(new StartupTimer());
+        try {
+            exercise(runtime, reload, heartbeats);
+        } catch (AssertionError | RuntimeException e) {
+            runtime.stop();
+            throw e;
+        }
+
+        PluginExecutors executors = runtime.getExecutors();
+        runtime.stopComponents();
+        // Timers for requests still in flight are cancelled when the executors shut down; anything else is a
+        // component that did not stop its own work.
+        int leftover = settledLeftoverTasks(executors);
+        assertEquals(0, leftover, "reload " + reload + ": tasks still queued or running after every component "
+                + "stopped\n" + describeThreads());
+        assertTrue(runtime.shutdownExecutors(), "reload " + reload + ": executors still busy after shutdown");
+    }
+
+    /** Sends heartbeats through the service and the API client, and polls the status endpoint. */
+    private void exercise(PluginRuntime runtime, int reload, int heartbeats) throws InterruptedException {
+        long served = fake.getHeartbeats();
+        runtime.getHeartbeatService().sendHeartbeatNow();
+        TaleNameAPI api = new TaleNameAPI(runtime.getConfigManager(), runtime.getTransport(), runtime.getMetrics());
+        List<CompletableFuture<TaleNameAPI.HeartbeatResponse>> sent = new ArrayList<>();
+        for (int i = 0; i < heartbeats; i++) {
+            TaleNameAPI.HeartbeatData data = new TaleNameAPI.HeartbeatData(1, 10, "soak",
+                    List.of(UUID.randomUUID()), i, -1, null, null);
+            sent.add(runtime.getExecutors().withTimeout(api.sendHeartbeat("soak-token", data),
+                    Duration.ofSeconds(10)));
+        }
+        runtime.getPlayerIndex().playerJoined(UUID.randomUUID());
+        pollStatus(runtime.getConfigManager().getStatusPort());
+        // Leave some requests in flight so shutdown has something to cancel.
+        sent.get(0).join();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (fake.getHeartbeats() <= served && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(fake.getHeartbeats() > served, "reload " + reload + ": no heartbeat got through");
+    }
+
+    private static int settledLeftoverTasks(PluginExecutors executors) throws InterruptedException {
+        int leftover = 0;
+        for (int i = 0; i < 40; i++) {
+            leftover = executors.getLiveTaskCount() - executors.getInFlightCount();
+            if (leftover <= 0) return 0;
+            Thread.sleep(50);
+        }
+        return leftover;
+    }
+
+    private static void pollStatus(int port) {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setSoTimeout(2000);
+            socket.getOutputStream().write("GET /status HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            socket.getInputStream().readAllBytes();
+        } catch (IOException e) {
+            throw new AssertionError("status poll failed", e);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static int settledThreadCount() throws InterruptedException {
+        // Give exiting threads a moment to terminate.
+        int previous = -1;
+        for (int i = 0; i < 20; i++) {
+            int count = Thread.getAllStackTraces().size();
+            if (count == previous) return count;
+            previous = count;
+            Thread.sleep(50);
+        }
+        return previous;
+    }
+
+    private static String describeThreads() {
+        Map<String, Integer> byName = new TreeMap<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            byName.merge(thread.getName().replaceAll("\\d+", "#"), 1, Integer::sum);
+        }
+        StringBuilder description = new StringBuilder("live threads:");
+        byName.forEach((name, count) -> description.append("\n  ").append(count).append(" x ").append(name));
+        return description.toString();
+    }
+
+    /** The game server as the runtime sees it here: no worlds to probe but the caller's own thread. */
+    private static final class SoakHost implements PluginRuntime.Host {
+
+        public int getMaxPlayers() {
+            return 10;
+        }
+
+        public String getMotd() {
+            return "soak";
+        }
+
+        public Executor getDefaultWorld() {
+            // Probes run on the scheduler thread that submits them.
+            return Runnable::run;
+        }
+    }
+}
@@ -1,21 +1,32 @@
 package net.talename.serverLink;
 
+import com.hypixel.hytale.server.core.HytaleServer;
+import com.hypixel.hytale.server.core.event.events.player.AddPlayerToWorldEvent;
+import com.hypixel.hytale.server.core.event.events.player.DrainPlayerFromWorldEvent;
+import com.hypixel.hytale.server.core.event.events.player.PlayerConnectEvent;
+import com.hypixel.hytale.server.core.event.events.player.PlayerDisconnectEvent;
 import com.hypixel.hytale.server.core.plugin.JavaPlugin;
 import com.hypixel.hytale.server.core.plugin.JavaPluginInit;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.Universe;
+import com.hypixel.hytale.server.core.universe.world.World;
 import net.talename.serverLink.command.TaleNameCommand;
-import net.talename.serverLink.config.ConfigManager;
 import net.talename.serverLink.service.HeartbeatService;
+import net.talename.serverLink.service.PlayerIndex;
+import net.talename.serverLink.service.WorldPopulation;
 import org.checkerframework.checker.nullness.compatqual.NonNullDecl;
 
+import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
-public class Main extends JavaPlugin {
+public class Main extends JavaPlugin implements PluginRuntime.Host {
 
     private static final Logger LOGGER = Logger.getLogger("TaleName-ServerLink");
 
     private static Main instance;
-    private ConfigManager configManager;
-    private HeartbeatService heartbeatService;
+    private PluginRuntime runtime;
 
     public Main(@NonNullDecl JavaPluginInit init) {
         super(init);
@@ -25,32 +36,64 @@ public class Main extends JavaPlugin {
     @Override
     protected void setup() {
         LOGGER.info("TaleName ServerLink is starting...");
-
-        this.configManager = new ConfigManager(this);
-        configManager.loadConfig();
+        StartupTimer timer = new StartupTimer();
+
+        this.runtime = new PluginRuntime(getDataDirectory(), LOGGER, this);
+        PlayerIndex playerIndex = runtime.getPlayerIndex();
+        WorldPopulation worldPopulation = runtime.getWorldPopulation();
+        // The heartbeat service exists once the runtime has started; events before that only need the index.
+        getEventRegistry().register(PlayerConnectEvent.class, event -> {
+            playerIndex.playerJoined(event.getPlayerRef().getUuid());
+            HeartbeatService heartbeatService = runtime.getHeartbeatService();
+            if (heartbeatService != null) heartbeatService.playerJoined(event.getPlayerRef().getUuid());
+        });
+        getEventRegistry().register(PlayerDisconnectEvent.class, event -> {
+            playerIndex.playerLeft(event.getPlayerRef().getUuid());
+            HeartbeatService heartbeatService = runtime.getHeartbeatService();
+            if (heartbeatService != null) heartbeatService.playerLeft(event.getPlayerRef().getUuid());
+        });
+        // World events are keyed by world, so listen globally. A transfer is a drain followed by an add.
+        getEventRegistry().registerGlobal(AddPlayerToWorldEvent.class,
+                event -> worldPopulation.playerAdded(event.getWorld().getName()));
+        getEventRegistry().registerGlobal(DrainPlayerFromWorldEvent.class,
+                event -> worldPopulation.playerRemoved(event.getWorld().getName()));
+        timer.mark("events");
 
         TaleNameCommand taleNameCommand = new TaleNameCommand(this);
         getCommandRegistry().registerCommand(taleNameCommand);
+        timer.mark("commands");
+
+        runtime.start(timer);
 
-        this.heartbeatService = new HeartbeatService(this);
+        LOGGER.info("TaleName ServerLink enabled in " + timer.summary());
+    }
 
-        if (configManager.isLinked()) {
-            LOGGER.info("Server is linked. Starting heartbeat service...");
-            heartbeatService.start();
-        } else {
-            LOGGER.info("Server not linked. Use /talename link --code=<code> to link.");
+    @Override
+    protected void start() {
+        // Pick up players that connected before our listeners existed (plugin reload).
+        Universe universe = Universe.get();
+        if (universe != null) {
+            runtime.getPlayerIndex().seed(universe.getPlayers().stream()
+                    .map(PlayerRef::getUuid)
+                    .collect(Collectors.toList()));
+            runtime.getWorldPopulation().seed(scanWorlds());
         }
+    }
 
-        LOGGER.info("TaleName ServerLink enabled!");
+    /** Counts players in every world the slow way; for seeding and checking {@link WorldPopulation}. */
+    public Map<String, Integer> scanWorlds() {
+        Universe universe = Universe.get();
+        if (universe == null) {
+            return Map.of();
+        }
+        return WorldPopulation.scan(universe.getWorlds().values(), World::getName,
+                world -> world.getPlayerRefs().size());
     }
 
     @Override
     protected void shutdown() {
-        if (heartbeatService != null) {
-            heartbeatService.stop();
-        }
-        if (configManager != null) {
-            configManager.saveConfig();
+        if (runtime != null) {
+            runtime.stop();
         }
         LOGGER.info("TaleName ServerLink disabled!");
     }
@@ -59,15 +102,21 @@ public class Main extends JavaPlugin {
         return instance;
     }
 
-    public ConfigManager getConfigManager() {
-        return configManager;
+    public PluginRuntime getRuntime() {
+        return runtime;
+    }
+
+    public int getMaxPlayers() {
+        return HytaleServer.get().getConfig().getMaxPlayers();
     }
 
-    public HeartbeatService getHeartbeatService() {
-        return heartbeatService;
+    public String getMotd() {
+        return HytaleServer.get().getConfig().getMotd();
     }
 
-    public Logger getPluginLogger() {
-        return LOGGER;
+    public Executor getDefaultWorld() {
+        Universe universe = Universe.get();
+        World world = universe != null ? universe.getDefaultWorld() : null;
+        return world != null ? world::execute : null;
     }
 }
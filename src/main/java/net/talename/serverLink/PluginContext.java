@@ -0,0 +1,52 @@
+package net.talename.serverLink;
+
+import net.talename.serverLink.api.HttpTransport;
+import net.talename.serverLink.config.ConfigManager;
+import net.talename.serverLink.service.AggregatorServer;
+import net.talename.serverLink.service.HealthSampler;
+import net.talename.serverLink.service.HeartbeatService;
+import net.talename.serverLink.service.LinkMetrics;
+import net.talename.serverLink.service.PlayerIndex;
+import net.talename.serverLink.service.WorldPopulation;
+
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+/**
+ * What the long-running services need from the plugin. {@link PluginRuntime} implements it, on a live server and
+ * in the reload soak alike, so the services can be started and stopped outside the game.
+ */
+public interface PluginContext {
+
+    PluginExecutors getExecutors();
+
+    ConfigManager getConfigManager();
+
+    HttpTransport getTransport();
+
+    /** Null when health telemetry is disabled. */
+    HealthSampler getHealthSampler();
+
+    LinkMetrics getMetrics();
+
+    HeartbeatService getHeartbeatService();
+
+    PlayerIndex getPlayerIndex();
+
+    WorldPopulation getWorldPopulation();
+
+    /** Null unless this instance is the aggregator. */
+    AggregatorServer getAggregatorServer();
+
+    Logger getPluginLogger();
+
+    Path getDataDirectory();
+
+    int getMaxPlayers();
+
+    String getMotd();
+
+    /** Runs tasks on the default world's thread; null while there is no default world. */
+    Executor getDefaultWorld();
+}
@@ -0,0 +1,122 @@
+package net.talename.serverLink;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Every thread the plugin uses: one daemon scheduler thread for timers and virtual threads for I/O and blocking
+ * work. Owned by {@link PluginRuntime} and shut down with it, so reloading the plugin never leaves threads behind.
+ * Timer tasks must stay short; anything that blocks belongs on {@link #io()}.
+ */
+public class PluginExecutors {
+
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ExecutorService io;
+    private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+    // Virtual threads don't show up in Thread.getAllStackTraces(), so io() counts its own.
+    private final AtomicInteger liveIoTasks = new AtomicInteger();
+
+    public PluginExecutors() {
+        ThreadFactory virtual = Thread.ofVirtual().name("TaleName-IO-", 0).factory();
+        this.io = Executors.newThreadPerTaskExecutor(task -> virtual.newThread(() -> {
+            liveIoTasks.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                liveIoTasks.decrementAndGet();
+            }
+        }));
+        this.scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "TaleName-Scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        // Cancelled wake-ups and timeouts would otherwise sit in the queue until their delay passes.
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    public ScheduledExecutorService scheduler() {
+        return scheduler;
+    }
+
+    public ExecutorService io() {
+        return io;
+    }
+
+    /**
+     * Tracks {@code future} until it completes, failing it with a {@link TimeoutException} after {@code timeout}.
+     * Still-pending futures are cancelled on {@link #shutdown}.
+     */
+    public <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, Duration timeout) {
+        if (future.isDone()) return future;
+        inFlight.add(future);
+        ScheduledFuture<?> timer;
+        try {
+            timer = scheduler.schedule(
+                    () -> future.completeExceptionally(new TimeoutException("Timed out after " + timeout.toSeconds() + "s")),
+                    timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            // Shutting down.
+            inFlight.remove(future);
+            future.cancel(false);
+            return future;
+        }
+        future.whenComplete((result, e) -> {
+            timer.cancel(false);
+            inFlight.remove(future);
+        });
+        return future;
+    }
+
+    /** Number of tracked futures that have not completed yet. */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /** Timers queued or running on the scheduler plus tasks running on {@link #io()}. */
+    public int getLiveTaskCount() {
+        return scheduler.getQueue().size() + scheduler.getActiveCount() + liveIoTasks.get();
+    }
+
+    /**
+     * Cancels timers and tracked futures, then waits up to {@code timeoutMillis} for running tasks to finish.
+     *
+     * @return false if some task was still running when the wait ran out
+     */
+    public boolean shutdown(long timeoutMillis) {
+        scheduler.shutdownNow();
+        for (CompletableFuture<?> future : inFlight) {
+            future.completeExceptionally(new CancellationException("Plugin shutting down"));
+        }
+        inFlight.clear();
+        io.shutdown();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            boolean done = scheduler.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            done &= io.awaitTermination(remaining, TimeUnit.NANOSECONDS);
+            if (!done) {
+                io.shutdownNow();
+            }
+            return done;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            io.shutdownNow();
+            return false;
+        }
+    }
+}
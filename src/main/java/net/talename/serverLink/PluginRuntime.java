@@ -0,0 +1,260 @@
+package net.talename.serverLink;
+
+import net.talename.serverLink.api.HttpTransport;
+import net.talename.serverLink.config.ConfigManager;
+import net.talename.serverLink.config.ConfigWatcher;
+import net.talename.serverLink.service.AggregatorServer;
+import net.talename.serverLink.service.HealthSampler;
+import net.talename.serverLink.service.HeartbeatService;
+import net.talename.serverLink.service.LinkMetrics;
+import net.talename.serverLink.service.LinkService;
+import net.talename.serverLink.service.MetricsExporter;
+import net.talename.serverLink.service.PlayerIndex;
+import net.talename.serverLink.service.StatusServer;
+import net.talename.serverLink.service.WorldPopulation;
+
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+/**
+ * The plugin's long-running components, started and stopped in order. {@link Main} runs one per plugin load and
+ * supplies the game server through {@link Host}; the reload soak runs the same lifecycle without one.
+ */
+public class PluginRuntime implements PluginContext {
+
+    private static final long SHUTDOWN_WAIT_MILLIS = 5000;
+
+    /** The parts of the game server the components read. */
+    public interface Host {
+
+        int getMaxPlayers();
+
+        String getMotd();
+
+        /** Runs tasks on the default world's thread; null while there is no default world. */
+        Executor getDefaultWorld();
+    }
+
+    private final Path dataDirectory;
+    private final Logger logger;
+    private final Host host;
+    private final PluginExecutors executors = new PluginExecutors();
+    private final ConfigManager configManager;
+    private final LinkMetrics metrics = new LinkMetrics();
+    private final PlayerIndex playerIndex = new PlayerIndex();
+    private final WorldPopulation worldPopulation = new WorldPopulation();
+    private HttpTransport transport;
+    private HeartbeatService heartbeatService;
+    private LinkService linkService;
+    private AggregatorServer aggregatorServer;
+    private MetricsExporter metricsExporter;
+    private ConfigWatcher configWatcher;
+    private HealthSampler healthSampler;
+    private StatusServer statusServer;
+
+    public PluginRuntime(Path dataDirectory, Logger logger, Host host) {
+        this.dataDirectory = dataDirectory;
+        this.logger = logger;
+        this.host = host;
+        this.configManager = new ConfigManager(dataDirectory, logger, executors.scheduler(), executors.io());
+    }
+
+    /**
+     * Loads the config and starts every component it enables, then the heartbeat if the server is linked.
+     *
+     * @param timer receives one phase per component group
+     */
+    public void start(StartupTimer timer) {
+        configManager.loadConfig();
+        timer.mark("config");
+
+        if (configManager.isAggregator()) {
+            this.aggregatorServer = new AggregatorServer(this, configManager.getAggregatorPort());
+            aggregatorServer.start();
+            timer.mark("aggregator");
+        }
+
+        if (configManager.isStatusEndpointEnabled()) {
+            this.statusServer = new StatusServer(this, configManager.getStatusBindAddress(), configManager.getStatusPort());
+            statusServer.start();
+            timer.mark("status endpoint");
+        }
+
+        // The HTTP client itself is built lazily on first request.
+        this.transport = new HttpTransport(configManager, logger, executors.io(), executors.scheduler());
+        transport.startProbing();
+        this.heartbeatService = new HeartbeatService(this);
+        this.linkService = new LinkService(this);
+        timer.mark("heartbeat");
+
+        metrics.registerGauge("talename_players_online", "Players in the online-player index.", playerIndex::size);
+        if (aggregatorServer != null) {
+            metrics.registerGauge("talename_aggregator_pending", "Member heartbeats waiting for the next batch.",
+                    aggregatorServer::getPendingCount);
+        }
+        if (configManager.isHealthTelemetryEnabled()) {
+            this.healthSampler = new HealthSampler(this);
+            healthSampler.start(configManager.getHealthSampleIntervalMillis());
+        }
+        if (configManager.isMetricsFileEnabled()) {
+            this.metricsExporter = new MetricsExporter(metrics, dataDirectory, logger, executors);
+            metricsExporter.start(configManager.getMetricsIntervalSeconds());
+        }
+
+        configManager.addReloadListener(this::onConfigReloaded);
+        this.configWatcher = new ConfigWatcher(configManager, logger, executors.io());
+        configWatcher.start();
+
+        if (configManager.isLinked()) {
+            logger.info("Server is linked. Starting heartbeat service...");
+            transport.prewarm();
+            heartbeatService.start();
+        } else {
+            logger.info("Server not linked. Use /talename link --code=<code> to link.");
+        }
+    }
+
+    /**
+     * Stops every component, then the executors.
+     *
+     * @return false if tasks were still running when the executors gave up waiting
+     */
+    public boolean stop() {
+        stopComponents();
+        return shutdownExecutors();
+    }
+
+    /** Stops every component but leaves the executors running, so what is left on them can be inspected. */
+    public void stopComponents() {
+        if (configWatcher != null) {
+            configWatcher.stop();
+        }
+        if (heartbeatService != null) {
+            heartbeatService.shutdown();
+        }
+        if (aggregatorServer != null) {
+            aggregatorServer.stop();
+        }
+        if (statusServer != null) {
+            statusServer.stop();
+        }
+        if (transport != null) {
+            transport.shutdown();
+        }
+        if (healthSampler != null) {
+            healthSampler.shutdown();
+        }
+        if (metricsExporter != null) {
+            metricsExporter.shutdown();
+        }
+        configManager.close();
+    }
+
+    /** Last: every component may still need the scheduler to flush. */
+    public boolean shutdownExecutors() {
+        if (executors.shutdown(SHUTDOWN_WAIT_MILLIS)) {
+            return true;
+        }
+        logger.warning("Some TaleName tasks were still running after " + SHUTDOWN_WAIT_MILLIS + "ms");
+        return false;
+    }
+
+    private void onConfigReloaded(ConfigManager.ConfigChange change) {
+        ConfigManager.ServerLinkConfig previous = change.previous();
+        ConfigManager.ServerLinkConfig current = change.current();
+
+        if (previous.devMode != current.devMode || !Objects.equals(previous.apiUrl, current.apiUrl)
+                || !Objects.equals(previous.apiUrls, current.apiUrls)) {
+            // The transport picks up the new client and endpoints on next use; old requests finish on the old ones.
+            transport.prewarm();
+        }
+
+        if (!configManager.isLinked()) {
+            heartbeatService.stop();
+        } else if (!heartbeatService.isRunning()) {
+            heartbeatService.start();
+        } else {
+            heartbeatService.reschedule();
+        }
+
+        if (!current.networkMode.equalsIgnoreCase(previous.networkMode)
+                || previous.aggregatorPort != current.aggregatorPort
+                || previous.spoolEnabled != current.spoolEnabled
+                || previous.spoolSizeKb != current.spoolSizeKb
+                || previous.metricsFile != current.metricsFile
+                || previous.metricsIntervalSeconds != current.metricsIntervalSeconds
+                || previous.healthTelemetry != current.healthTelemetry
+                || previous.healthSampleIntervalMillis != current.healthSampleIntervalMillis
+                || previous.presenceChannel != current.presenceChannel
+                || previous.statusEndpoint != current.statusEndpoint
+                || previous.statusPort != current.statusPort
+                || !Objects.equals(previous.statusBindAddress, current.statusBindAddress)) {
+            logger.info("Network, spool, metrics, health, presence channel and status endpoint settings"
+                    + " apply after a restart.");
+        }
+    }
+
+    public PluginExecutors getExecutors() {
+        return executors;
+    }
+
+    public ConfigManager getConfigManager() {
+        return configManager;
+    }
+
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    /** Null when health telemetry is disabled. */
+    public HealthSampler getHealthSampler() {
+        return healthSampler;
+    }
+
+    public LinkMetrics getMetrics() {
+        return metrics;
+    }
+
+    public HeartbeatService getHeartbeatService() {
+        return heartbeatService;
+    }
+
+    public LinkService getLinkService() {
+        return linkService;
+    }
+
+    public PlayerIndex getPlayerIndex() {
+        return playerIndex;
+    }
+
+    public WorldPopulation getWorldPopulation() {
+        return worldPopulation;
+    }
+
+    /** Null unless this instance is the aggregator. */
+    public AggregatorServer getAggregatorServer() {
+        return aggregatorServer;
+    }
+
+    public Logger getPluginLogger() {
+        return logger;
+    }
+
+    public Path getDataDirectory() {
+        return dataDirectory;
+    }
+
+    public int getMaxPlayers() {
+        return host.getMaxPlayers();
+    }
+
+    public String getMotd() {
+        return host.getMotd();
+    }
+
+    public Executor getDefaultWorld() {
+        return host.getDefaultWorld();
+    }
+}
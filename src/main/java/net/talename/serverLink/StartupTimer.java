@@ -0,0 +1,28 @@
+package net.talename.serverLink;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records how long each setup phase takes, so the plugin's share of server boot time is visible in the log.
+ */
+public class StartupTimer {
+
+    private final long started = System.nanoTime();
+    private final List<String> phases = new ArrayList<>();
+    private long last = started;
+
+    public void mark(String phase) {
+        long now = System.nanoTime();
+        phases.add(phase + " " + formatMillis(now - last));
+        last = now;
+    }
+
+    public String summary() {
+        return formatMillis(System.nanoTime() - started) + " (" + String.join(", ", phases) + ")";
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format("%.1fms", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,144 @@
+package net.talename.serverLink.api;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Chooses which API endpoint a request goes to: the lowest smoothed round-trip time among endpoints whose circuit
+ * is closed, in configured order until they have been measured. Each endpoint has a circuit breaker that opens
+ * after consecutive failures and lets traffic through again once its open period, doubled per trip, runs out.
+ */
+class EndpointRouter {
+
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long BASE_OPEN_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long MAX_OPEN_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final double RTT_WEIGHT = 0.3;
+    // Stay on the current endpoint unless another is clearly faster, so routing does not flap on noise.
+    private static final double SWITCH_RATIO = 0.8;
+    private static final long SWITCH_MARGIN_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final Logger logger;
+    private final Map<String, Health> endpoints = new LinkedHashMap<>();
+    private List<String> configured = List.of();
+    private Health current;
+
+    EndpointRouter(Logger logger) {
+        this.logger = logger;
+    }
+
+    /** Applies the configured endpoints, keeping what is known about ones that stay. */
+    synchronized void update(List<String> baseUrls) {
+        if (baseUrls.equals(configured)) return;
+        Map<String, Health> previous = new LinkedHashMap<>(endpoints);
+        endpoints.clear();
+        for (int i = 0; i < baseUrls.size(); i++) {
+            Health health = previous.get(baseUrls.get(i));
+            endpoints.put(baseUrls.get(i), health != null ? health.reorder(i) : new Health(baseUrls.get(i), i));
+        }
+        configured = List.copyOf(baseUrls);
+        if (current != null && !endpoints.containsKey(current.baseUrl)) {
+            current = null;
+        }
+    }
+
+    synchronized List<String> baseUrls() {
+        return configured;
+    }
+
+    synchronized String select() {
+        long now = System.nanoTime();
+        Health best = rank(now).get(0);
+        if (current != null && current != best && !current.isOpen(now)
+                && (best.rttNanos < 0 || (current.rttNanos >= 0
+                && best.rttNanos > current.rttNanos * SWITCH_RATIO - SWITCH_MARGIN_NANOS))) {
+            return current.baseUrl;
+        }
+        if (current != best && current != null && endpoints.size() > 1) {
+            logger.info("Routing TaleName API requests to " + best.baseUrl + describe(best));
+        }
+        current = best;
+        return best.baseUrl;
+    }
+
+    /** Every endpoint, best first; endpoints with an open circuit come last, soonest to reopen first. */
+    synchronized List<String> ranked() {
+        List<Health> ranked = rank(System.nanoTime());
+        List<String> urls = new ArrayList<>(ranked.size());
+        for (Health health : ranked) {
+            urls.add(health.baseUrl);
+        }
+        return urls;
+    }
+
+    synchronized void recordSuccess(String baseUrl, long rttNanos) {
+        Health health = endpoints.get(baseUrl);
+        if (health == null) return;
+        if (health.trips > 0) {
+            logger.info("TaleName API endpoint " + baseUrl + " recovered");
+        }
+        health.consecutiveFailures = 0;
+        health.trips = 0;
+        health.openUntilNanos = 0;
+        health.rttNanos = health.rttNanos < 0
+                ? rttNanos
+                : (long) (health.rttNanos + RTT_WEIGHT * (rttNanos - health.rttNanos));
+    }
+
+    synchronized void recordFailure(String baseUrl) {
+        Health health = endpoints.get(baseUrl);
+        if (health == null) return;
+        health.consecutiveFailures++;
+        long now = System.nanoTime();
+        // Failures of requests sent before the circuit opened must not extend it.
+        if (health.consecutiveFailures < FAILURE_THRESHOLD || health.isOpen(now)) return;
+
+        long openNanos = Math.min(BASE_OPEN_NANOS << Math.min(health.trips, 16), MAX_OPEN_NANOS);
+        health.trips++;
+        health.openUntilNanos = now + openNanos;
+        logger.warning("TaleName API endpoint " + baseUrl + " is failing; "
+                + (endpoints.size() > 1 ? "avoiding" : "backing off") + " it for "
+                + TimeUnit.NANOSECONDS.toSeconds(openNanos) + "s");
+    }
+
+    private List<Health> rank(long now) {
+        List<Health> ranked = new ArrayList<>(endpoints.values());
+        ranked.sort(Comparator.<Health>comparingLong(h -> h.isOpen(now) ? h.openUntilNanos - now : -1)
+                .thenComparingLong(h -> h.rttNanos < 0 ? Long.MAX_VALUE : h.rttNanos)
+                .thenComparingInt(h -> h.order));
+        return ranked;
+    }
+
+    private static String describe(Health health) {
+        return health.rttNanos < 0 ? "" : " (" + TimeUnit.NANOSECONDS.toMillis(health.rttNanos) + "ms)";
+    }
+
+    private static final class Health {
+        final String baseUrl;
+        int order;
+        // Smoothed round-trip time of successful requests and probes; -1 until measured.
+        long rttNanos = -1;
+        int consecutiveFailures;
+        int trips;
+        long openUntilNanos;
+
+        Health(String baseUrl, int order) {
+            this.baseUrl = baseUrl;
+            this.order = order;
+        }
+
+        Health reorder(int order) {
+            this.order = order;
+            return this;
+        }
+
+        boolean isOpen(long now) {
+            return openUntilNanos != 0 && now - openUntilNanos < 0;
+        }
+    }
+}
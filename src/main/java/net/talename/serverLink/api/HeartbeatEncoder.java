@@ -0,0 +1,221 @@
+package net.talename.serverLink.api;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes request bodies straight into a {@link PayloadBuffer}.
+ * JSON is the default; the compact binary form is only used once the API advertises it via {@code Accept-Post}.
+ */
+public class HeartbeatEncoder {
+
+    public static final String JSON_TYPE = "application/json";
+    public static final String BINARY_TYPE = "application/x-talename-heartbeat";
+
+    // Binary layout: magic "TN", version, flags, then varints and raw 16-byte UUIDs.
+    private static final int BINARY_VERSION = 1;
+    private static final int FLAG_DELTA = 1;
+    // Set when a health block follows the player data.
+    private static final int FLAG_HEALTH = 2;
+    // Set when unique-player sketches follow the health block.
+    private static final int FLAG_SKETCH = 4;
+    // Set when per-world counts follow the sketches.
+    private static final int FLAG_WORLDS = 8;
+    // Set when the player list holds only part of playersOnline; no data of its own.
+    private static final int FLAG_TRUNCATED = 16;
+
+    public void writeHeartbeatJson(TaleNameAPI.HeartbeatData data, PayloadBuffer out) {
+        out.writeAscii("{\"playersOnline\":");
+        out.writeDecimal(data.playersOnline());
+        out.writeAscii(",\"maxPlayers\":");
+        out.writeDecimal(data.maxPlayers());
+        out.writeAscii(",\"sequence\":");
+        out.writeDecimal(data.sequence());
+        if (data.isDelta()) {
+            out.writeAscii(",\"baseSequence\":");
+            out.writeDecimal(data.baseSequence());
+            out.writeAscii(",\"joined\":");
+            writeJsonUuids(data.joined(), out);
+            out.writeAscii(",\"left\":");
+            writeJsonUuids(data.left(), out);
+        } else if (data.playerList() != null && !data.playerList().isEmpty()) {
+            out.writeAscii(",\"playerList\":");
+            writeJsonUuids(data.playerList(), out);
+            if (data.isPlayerListTruncated()) {
+                out.writeAscii(",\"playerListTruncated\":true");
+            }
+        }
+        if (data.health() != null) {
+            writeHealthJson(data.health(), out);
+        }
+        TaleNameAPI.UniquePlayers unique = data.uniquePlayers();
+        if (unique != null) {
+            out.writeAscii(",\"uniquePlayers\":{\"precision\":");
+            out.writeDecimal(unique.precision());
+            out.writeAscii(",\"hour\":");
+            out.writeJsonBase64(unique.hour());
+            out.writeAscii(",\"day\":");
+            out.writeJsonBase64(unique.day());
+            out.write('}');
+        }
+        if (data.worlds() != null) {
+            out.writeAscii(",\"worlds\":{");
+            boolean first = true;
+            for (TaleNameAPI.WorldCount world : data.worlds()) {
+                if (!first) out.write(',');
+                out.writeJsonString(world.world());
+                out.write(':');
+                out.writeDecimal(world.players());
+                first = false;
+            }
+            out.write('}');
+        }
+        out.write('}');
+    }
+
+    private static void writeHealthJson(TaleNameAPI.HealthSummary health, PayloadBuffer out) {
+        out.writeAscii(",\"health\":{\"samples\":");
+        out.writeDecimal(health.samples());
+        out.writeAscii(",\"tickLagP50Micros\":");
+        out.writeDecimal(health.tickLagP50Micros());
+        out.writeAscii(",\"tickLagP95Micros\":");
+        out.writeDecimal(health.tickLagP95Micros());
+        out.writeAscii(",\"tickLagP99Micros\":");
+        out.writeDecimal(health.tickLagP99Micros());
+        out.writeAscii(",\"tickLagMaxMicros\":");
+        out.writeDecimal(health.tickLagMaxMicros());
+        out.writeAscii(",\"heapPeakBytes\":");
+        out.writeDecimal(health.heapPeakBytes());
+        out.writeAscii(",\"heapMaxBytes\":");
+        out.writeDecimal(health.heapMaxBytes());
+        out.writeAscii(",\"nonHeapBytes\":");
+        out.writeDecimal(health.nonHeapBytes());
+        out.writeAscii(",\"directBytes\":");
+        out.writeDecimal(health.directBytes());
+        out.writeAscii(",\"gcPauseMillis\":");
+        out.writeDecimal(health.gcPauseMillis());
+        out.writeAscii(",\"gcCount\":");
+        out.writeDecimal(health.gcCount());
+        out.write('}');
+    }
+
+    public void writeBatchJson(String serverToken, TaleNameAPI.HeartbeatData own,
+                               List<TaleNameAPI.BatchEntry> members, PayloadBuffer out) {
+        out.writeAscii("{\"heartbeats\":[{\"serverToken\":");
+        out.writeJsonString(serverToken);
+        out.writeAscii(",\"heartbeat\":");
+        writeHeartbeatJson(own, out);
+        out.write('}');
+        for (TaleNameAPI.BatchEntry member : members) {
+            out.writeAscii(",{\"serverToken\":");
+            out.writeJsonString(member.serverToken());
+            out.writeAscii(",\"heartbeat\":");
+            out.write(member.body(), 0, member.body().length);
+            out.write('}');
+        }
+        out.writeAscii("]}");
+    }
+
+    public void writeReplayJson(List<TaleNameAPI.ReplayEntry> entries, PayloadBuffer out) {
+        out.writeAscii("{\"heartbeats\":[");
+        boolean first = true;
+        for (TaleNameAPI.ReplayEntry entry : entries) {
+            if (!first) out.write(',');
+            out.writeAscii("{\"timestamp\":");
+            out.writeDecimal(entry.timestamp());
+            out.writeAscii(",\"heartbeat\":");
+            out.write(entry.body(), 0, entry.body().length);
+            out.write('}');
+            first = false;
+        }
+        out.writeAscii("]}");
+    }
+
+    public void writeHeartbeatBinary(TaleNameAPI.HeartbeatData data, PayloadBuffer out) {
+        out.write('T');
+        out.write('N');
+        out.write(BINARY_VERSION);
+        out.write((data.isDelta() ? FLAG_DELTA : 0) | (data.health() != null ? FLAG_HEALTH : 0)
+                | (data.uniquePlayers() != null ? FLAG_SKETCH : 0) | (data.worlds() != null ? FLAG_WORLDS : 0)
+                | (data.isPlayerListTruncated() ? FLAG_TRUNCATED : 0));
+        out.writeVarLong(data.playersOnline());
+        out.writeVarLong(data.maxPlayers());
+        out.writeVarLong(data.sequence());
+        if (data.isDelta()) {
+            out.writeVarSignedLong(data.baseSequence());
+            writeBinaryUuids(data.joined(), out);
+            writeBinaryUuids(data.left(), out);
+        } else {
+            writeBinaryUuids(data.playerList(), out);
+        }
+        TaleNameAPI.HealthSummary health = data.health();
+        if (health != null) {
+            out.writeVarLong(health.samples());
+            out.writeVarSignedLong(health.tickLagP50Micros());
+            out.writeVarSignedLong(health.tickLagP95Micros());
+            out.writeVarSignedLong(health.tickLagP99Micros());
+            out.writeVarSignedLong(health.tickLagMaxMicros());
+            out.writeVarSignedLong(health.heapPeakBytes());
+            out.writeVarSignedLong(health.heapMaxBytes());
+            out.writeVarSignedLong(health.nonHeapBytes());
+            out.writeVarSignedLong(health.directBytes());
+            out.writeVarLong(health.gcPauseMillis());
+            out.writeVarLong(health.gcCount());
+        }
+        TaleNameAPI.UniquePlayers unique = data.uniquePlayers();
+        if (unique != null) {
+            // Fixed size: the reader derives the register count from the precision byte.
+            out.write(unique.precision());
+            out.write(unique.hour(), 0, unique.hour().length);
+            out.write(unique.day(), 0, unique.day().length);
+        }
+        if (data.worlds() != null) {
+            out.writeVarLong(data.worlds().size());
+            for (TaleNameAPI.WorldCount world : data.worlds()) {
+                out.writeString(world.world());
+                out.writeVarLong(world.players());
+            }
+        }
+    }
+
+    public void writeLinkJson(String linkCode, TaleNameAPI.ServerInfo serverInfo, PayloadBuffer out) {
+        out.writeAscii("{\"linkCode\":");
+        out.writeJsonString(linkCode);
+        out.writeAscii(",\"serverInfo\":{\"maxPlayers\":");
+        out.writeDecimal(serverInfo.maxPlayers());
+        writeOptionalJsonString("software", serverInfo.software(), out);
+        writeOptionalJsonString("motd", serverInfo.motd(), out);
+        out.writeAscii("}}");
+    }
+
+    private static void writeOptionalJsonString(String name, String value, PayloadBuffer out) {
+        if (value == null) return;
+        out.writeAscii(",\"");
+        out.writeAscii(name);
+        out.writeAscii("\":");
+        out.writeJsonString(value);
+    }
+
+    private static void writeJsonUuids(Collection<UUID> uuids, PayloadBuffer out) {
+        out.write('[');
+        boolean first = true;
+        for (UUID uuid : uuids) {
+            if (!first) out.write(',');
+            out.writeJsonUuid(uuid);
+            first = false;
+        }
+        out.write(']');
+    }
+
+    private static void writeBinaryUuids(Collection<UUID> uuids, PayloadBuffer out) {
+        if (uuids == null) {
+            out.writeVarLong(0);
+            return;
+        }
+        out.writeVarLong(uuids.size());
+        for (UUID uuid : uuids) {
+            out.writeUuid(uuid);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package net.talename.serverLink.api;
+
+import net.talename.serverLink.config.ConfigManager;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Plugin-wide HTTP client. Built lazily on first use so unlinked servers never pay for TLS setup at boot,
+ * and rebuilt when {@code devMode} changes so toggling it needs no restart. Requests are routed across the
+ * configured API endpoints by an {@link EndpointRouter}, fed by the requests themselves and by background probes.
+ */
+public class HttpTransport {
+
+    private static final Duration SHUTDOWN_WAIT = Duration.ofSeconds(2);
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(5);
+
+    private final ConfigManager config;
+    private final Logger logger;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsExecutors;
+    private final EndpointRouter router;
+    private HttpClient client;
+    private boolean clientDevMode;
+    private ScheduledFuture<?> probeTask;
+
+    /** Uses its own virtual-thread executor and timer thread, for running outside the plugin. */
+    public HttpTransport(ConfigManager config, Logger logger) {
+        this(config, logger, Executors.newVirtualThreadPerTaskExecutor(),
+                Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "TaleName-Transport-Timer");
+                    t.setDaemon(true);
+                    return t;
+                }), true);
+    }
+
+    /** Runs client I/O and callbacks on {@code executor} and timers on {@code scheduler}, which the caller owns. */
+    public HttpTransport(ConfigManager config, Logger logger, ExecutorService executor,
+                         ScheduledExecutorService scheduler) {
+        this(config, logger, executor, scheduler, false);
+    }
+
+    private HttpTransport(ConfigManager config, Logger logger, ExecutorService executor,
+                          ScheduledExecutorService scheduler, boolean ownsExecutors) {
+        this.config = config;
+        this.logger = logger;
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.ownsExecutors = ownsExecutors;
+        this.router = new EndpointRouter(logger);
+    }
+
+    /** The client and the endpoint the next request should go to, read together so they always match. */
+    public synchronized Endpoint endpoint() {
+        router.update(config.getApiBaseUrls());
+        HttpClient httpClient = client();
+        return new Endpoint(router.select(), clientDevMode, httpClient);
+    }
+
+    private HttpClient client() {
+        boolean devMode = config.isDevMode();
+        if (client != null && clientDevMode == devMode) {
+            return client;
+        }
+
+        HttpClient previous = client;
+        long started = System.nanoTime();
+        client = devMode ? createInsecureHttpClient() : newBuilder().build();
+        clientDevMode = devMode;
+        logger.info("HTTP transport ready in " + (System.nanoTime() - started) / 1_000_000 + "ms");
+        if (previous != null) {
+            // Lets requests already in flight on the old client finish.
+            previous.shutdown();
+        }
+        return client;
+    }
+
+    /** Sends {@code request}, which targets {@code endpoint}, and feeds the outcome to routing. */
+    public CompletableFuture<HttpResponse<byte[]>> send(Endpoint endpoint, HttpRequest request) {
+        long started = System.nanoTime();
+        return endpoint.httpClient().sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, e) -> record(endpoint.baseUrl(), started, response));
+    }
+
+    /**
+     * Sends the request built by {@code requestFor} to the best endpoint and, if it has not answered within
+     * {@code hedgeDelay} or fails outright, to the next best as well. The first 2xx answer wins; otherwise the
+     * first other answer once every attempt has finished. Only for requests the API treats as idempotent.
+     */
+    public CompletableFuture<HttpResponse<byte[]>> sendHedged(Function<String, HttpRequest> requestFor,
+                                                              Duration hedgeDelay) {
+        Endpoint endpoint = endpoint();
+        List<String> targets = new ArrayList<>(router.ranked());
+        // The selected endpoint goes first even when hysteresis kept it over a marginally faster one.
+        targets.remove(endpoint.baseUrl());
+        targets.add(0, endpoint.baseUrl());
+        if (hedgeDelay.isZero() || targets.size() > 2) {
+            targets = targets.subList(0, hedgeDelay.isZero() ? 1 : 2);
+        }
+
+        Hedge hedge = new Hedge(endpoint.httpClient(), targets, requestFor);
+        hedge.launchNext();
+        if (targets.size() > 1) {
+            ScheduledFuture<?> timer =
+                    scheduler.schedule(hedge::launchNext, hedgeDelay.toMillis(), TimeUnit.MILLISECONDS);
+            hedge.result.whenComplete((response, e) -> timer.cancel(false));
+        }
+        return hedge.result;
+    }
+
+    private void record(String baseUrl, long started, HttpResponse<?> response) {
+        // Client errors and rate limiting are answers about the request, not the endpoint's health.
+        if (response != null && response.statusCode() < 500) {
+            router.recordSuccess(baseUrl, System.nanoTime() - started);
+        } else {
+            router.recordFailure(baseUrl);
+        }
+    }
+
+    /**
+     * Measures every endpoint now and then every {@code endpointProbeIntervalSeconds}, while linked and with more
+     * than one to choose from. Probes also open the TLS/HTTP2 connections so switching endpoints is fast.
+     */
+    public synchronized void startProbing() {
+        if (probeTask != null) return;
+        probeTask = scheduler.schedule(this::probeRound, 0, TimeUnit.MILLISECONDS);
+    }
+
+    private void probeRound() {
+        synchronized (this) {
+            if (probeTask == null) return;
+            probeTask = scheduler.schedule(this::probeRound,
+                    config.getEndpointProbeIntervalSeconds(), TimeUnit.SECONDS);
+        }
+        // Unlinked servers only talk to the API when linking, which hedges instead.
+        if (config.isLinked() && config.getApiBaseUrls().size() > 1) {
+            executor.execute(this::probeAll);
+        }
+    }
+
+    private void probeAll() {
+        Endpoint endpoint = endpoint();
+        for (String baseUrl : router.baseUrls()) {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(baseUrl + "/"))
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .timeout(PROBE_TIMEOUT)
+                    .build();
+            long started = System.nanoTime();
+            endpoint.httpClient().sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, e) -> record(baseUrl, started, response));
+        }
+    }
+
+    /**
+     * Builds the client and opens the TLS/HTTP2 connection to every endpoint in the background so the first real
+     * request is fast.
+     */
+    public void prewarm() {
+        executor.execute(() -> {
+            try {
+                probeAll();
+            } catch (Exception ignored) {
+                // Only a warm-up; the real request will report problems.
+            }
+        });
+    }
+
+    /** Closes the client, waiting briefly for in-flight requests so its selector thread is gone on return. */
+    public synchronized void shutdown() {
+        if (probeTask != null) {
+            probeTask.cancel(false);
+            probeTask = null;
+        }
+        if (client != null) {
+            try {
+                client.shutdown();
+                if (!client.awaitTermination(SHUTDOWN_WAIT)) {
+                    client.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                client.shutdownNow();
+            }
+            client = null;
+        }
+        if (ownsExecutors) {
+            executor.shutdown();
+            scheduler.shutdown();
+        }
+    }
+
+    private HttpClient.Builder newBuilder() {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(executor);
+    }
+
+    private HttpClient createInsecureHttpClient() {
+        try {
+            TrustManager[] trustAll = new TrustManager[] {
+                    new X509TrustManager() {
+                        @Override
+                        public void checkClientTrusted(X509Certificate[] chain, String authType) {}
+
+                        @Override
+                        public void checkServerTrusted(X509Certificate[] chain, String authType) {}
+
+                        @Override
+                        public X509Certificate[] getAcceptedIssuers() {
+                            return new X509Certificate[0];
+                        }
+                    }
+            };
+
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, trustAll, new SecureRandom());
+
+            SSLParameters sslParameters = new SSLParameters();
+            // Disable hostname verification (dev mode only).
+            sslParameters.setEndpointIdentificationAlgorithm(null);
+
+            return newBuilder()
+                    .sslContext(sslContext)
+                    .sslParameters(sslParameters)
+                    .build();
+        } catch (Exception e) {
+            // If something goes wrong, fall back to the default client.
+            return newBuilder().build();
+        }
+    }
+
+    public record Endpoint(String baseUrl, boolean devMode, HttpClient httpClient) {}
+
+    /** One hedged request: at most one attempt per target, completing {@link #result} once. */
+    private final class Hedge {
+        final CompletableFuture<HttpResponse<byte[]>> result = new CompletableFuture<>();
+        private final HttpClient client;
+        private final List<String> targets;
+        private final Function<String, HttpRequest> requestFor;
+        private int launched;
+        private int finished;
+        private HttpResponse<byte[]> fallback;
+        private Throwable error;
+
+        Hedge(HttpClient client, List<String> targets, Function<String, HttpRequest> requestFor) {
+            this.client = client;
+            this.targets = targets;
+            this.requestFor = requestFor;
+        }
+
+        synchronized void launchNext() {
+            if (result.isDone() || launched == targets.size()) return;
+            String baseUrl = targets.get(launched++);
+            long started = System.nanoTime();
+            client.sendAsync(requestFor.apply(baseUrl), HttpResponse.BodyHandlers.ofByteArray())
+                    .whenComplete((response, e) -> {
+                        record(baseUrl, started, response);
+                        finish(response, e);
+                    });
+        }
+
+        private synchronized void finish(HttpResponse<byte[]> response, Throwable e) {
+            finished++;
+            if (response != null && response.statusCode() / 100 == 2) {
+                result.complete(response);
+                return;
+            }
+            if (response != null && (fallback == null || fallback.statusCode() >= 500)) {
+                fallback = response;
+            } else if (e != null && error == null) {
+                error = e;
+            }
+            boolean answered = response != null && response.statusCode() < 500;
+            if (!answered) {
+                // This endpoint is in trouble: don't wait out the hedge delay.
+                launchNext();
+            }
+            if (finished == launched && (answered || launched == targets.size())) {
+                if (fallback != null) {
+                    result.complete(fallback);
+                } else {
+                    result.completeExceptionally(error);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package net.talename.serverLink.api;
+
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Growable byte buffer that request bodies are encoded into directly, without an intermediate {@code String}.
+ */
+public class PayloadBuffer {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] bytes;
+    private int length;
+
+    public PayloadBuffer(int initialCapacity) {
+        this.bytes = new byte[Math.max(16, initialCapacity)];
+    }
+
+    public void reset() {
+        length = 0;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int capacity() {
+        return bytes.length;
+    }
+
+    public byte[] array() {
+        return bytes;
+    }
+
+    /** Publishes the buffer itself: it must not be reset or written while the request can still read it. */
+    public HttpRequest.BodyPublisher publisher() {
+        return HttpRequest.BodyPublishers.ofByteArray(bytes, 0, length);
+    }
+
+    /**
+     * Publishes an exact-size copy, so the buffer can be reused as soon as the request is built. The client may
+     * still be reading the body after its response future completes, e.g. when the server answers early.
+     */
+    public HttpRequest.BodyPublisher publisherCopy() {
+        return HttpRequest.BodyPublishers.ofByteArray(Arrays.copyOf(bytes, length));
+    }
+
+    private void ensure(int extra) {
+        int needed = length + extra;
+        if (needed > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(needed, bytes.length * 2));
+        }
+    }
+
+    public void write(int b) {
+        ensure(1);
+        bytes[length++] = (byte) b;
+    }
+
+    public void write(byte[] src, int offset, int count) {
+        ensure(count);
+        System.arraycopy(src, offset, bytes, length, count);
+        length += count;
+    }
+
+    /** Writes a string known to be plain ASCII (field names, constants). */
+    public void writeAscii(String s) {
+        int n = s.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            bytes[length++] = (byte) s.charAt(i);
+        }
+    }
+
+    public void writeDecimal(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            bytes[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) digits++;
+        int end = length + digits;
+        for (int i = end - 1; i >= length; i--) {
+            bytes[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        length = end;
+    }
+
+    /** Writes a JSON string literal, escaping as required and encoding non-ASCII as UTF-8. */
+    public void writeJsonString(String s) {
+        write('"');
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                ensure(2);
+                bytes[length++] = '\\';
+                bytes[length++] = (byte) c;
+            } else if (c < 0x20) {
+                ensure(6);
+                bytes[length++] = '\\';
+                bytes[length++] = 'u';
+                bytes[length++] = '0';
+                bytes[length++] = '0';
+                bytes[length++] = HEX[c >> 4];
+                bytes[length++] = HEX[c & 0xF];
+            } else if (c < 0x80) {
+                write(c);
+            } else if (!Character.isSurrogate(c)) {
+                writeUtf8(c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                writeUtf8(Character.toCodePoint(c, s.charAt(++i)));
+            } else {
+                // A lone surrogate has no UTF-8 form; the replacement character keeps the body valid UTF-8.
+                writeUtf8(0xFFFD);
+            }
+        }
+        write('"');
+    }
+
+    /** Writes a varint byte length followed by the UTF-8 bytes, for the binary format. */
+    public void writeString(String s) {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(utf8.length);
+        write(utf8, 0, utf8.length);
+    }
+
+    private void writeUtf8(int cp) {
+        ensure(4);
+        if (cp < 0x800) {
+            bytes[length++] = (byte) (0xC0 | (cp >> 6));
+            bytes[length++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (cp < 0x10000) {
+            bytes[length++] = (byte) (0xE0 | (cp >> 12));
+            bytes[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            bytes[length++] = (byte) (0x80 | (cp & 0x3F));
+        } else {
+            bytes[length++] = (byte) (0xF0 | (cp >> 18));
+            bytes[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            bytes[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            bytes[length++] = (byte) (0x80 | (cp & 0x3F));
+        }
+    }
+
+    /** Writes the canonical quoted 8-4-4-4-12 form without going through {@link UUID#toString()}. */
+    public void writeJsonUuid(UUID uuid) {
+        ensure(38);
+        bytes[length++] = '"';
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        writeHex(msb >>> 32, 8);
+        bytes[length++] = '-';
+        writeHex(msb >>> 16, 4);
+        bytes[length++] = '-';
+        writeHex(msb, 4);
+        bytes[length++] = '-';
+        writeHex(lsb >>> 48, 4);
+        bytes[length++] = '-';
+        writeHex(lsb, 12);
+        bytes[length++] = '"';
+    }
+
+    private void writeHex(long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            bytes[length + i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+        length += digits;
+    }
+
+    /** Writes {@code src} as a quoted, padded standard base64 string. */
+    public void writeJsonBase64(byte[] src) {
+        ensure(2 + (src.length + 2) / 3 * 4);
+        bytes[length++] = '"';
+        int i = 0;
+        for (; i + 2 < src.length; i += 3) {
+            int v = (src[i] & 0xFF) << 16 | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF);
+            bytes[length++] = BASE64[v >>> 18];
+            bytes[length++] = BASE64[(v >>> 12) & 0x3F];
+            bytes[length++] = BASE64[(v >>> 6) & 0x3F];
+            bytes[length++] = BASE64[v & 0x3F];
+        }
+        int remaining = src.length - i;
+        if (remaining > 0) {
+            int v = (src[i] & 0xFF) << 16 | (remaining == 2 ? (src[i + 1] & 0xFF) << 8 : 0);
+            bytes[length++] = BASE64[v >>> 18];
+            bytes[length++] = BASE64[(v >>> 12) & 0x3F];
+            bytes[length++] = remaining == 2 ? BASE64[(v >>> 6) & 0x3F] : (byte) '=';
+            bytes[length++] = '=';
+        }
+        bytes[length++] = '"';
+    }
+
+    public void writeUuid(UUID uuid) {
+        writeLong(uuid.getMostSignificantBits());
+        writeLong(uuid.getLeastSignificantBits());
+    }
+
+    public void writeLong(long value) {
+        ensure(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            bytes[length++] = (byte) (value >>> shift);
+        }
+    }
+
+    public void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte) value;
+    }
+
+    /** Zig-zag encoded so the -1 "no base" marker stays one byte. */
+    public void writeVarSignedLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+}
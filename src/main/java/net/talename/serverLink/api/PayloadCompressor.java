@@ -0,0 +1,64 @@
+package net.talename.serverLink.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Gzip for request bodies using one reused {@link Deflater}, so compressing a heartbeat does not
+ * allocate a new native zlib stream each interval.
+ */
+public class PayloadCompressor {
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] chunk = new byte[8192];
+    private boolean closed;
+
+    public synchronized void gzip(PayloadBuffer in, PayloadBuffer out) {
+        if (closed) {
+            throw new IllegalStateException("Compressor is closed");
+        }
+        out.reset();
+        out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+
+        deflater.reset();
+        deflater.setInput(in.array(), 0, in.length());
+        deflater.finish();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            out.write(chunk, 0, n);
+        }
+
+        crc.reset();
+        crc.update(in.array(), 0, in.length());
+        writeIntLE(out, (int) crc.getValue());
+        writeIntLE(out, in.length());
+    }
+
+    /** Frees the native zlib stream; it would otherwise outlive a plugin reload until finalization. */
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            deflater.end();
+        }
+    }
+
+    private static void writeIntLE(PayloadBuffer out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    public static byte[] gunzip(byte[] compressed) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package net.talename.serverLink.api;
+
+import net.talename.serverLink.PluginExecutors;
+import net.talename.serverLink.config.ConfigManager;
+
+import java.net.URI;
+import java.net.http.WebSocket;
+import java.net.http.WebSocketHandshakeException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Optional WebSocket to {@code /serverlinker/presence} that streams joins and leaves as they happen, so the site
+ * is live between heartbeats. Events are batched for a moment into one small JSON frame, kept until acked,
+ * and resent after a reconnect if the API still remembers where we left off. If it does not, or the buffer
+ * overflowed, {@code onResyncNeeded} asks the heartbeat path for a full snapshot. Heartbeats keep running either
+ * way; they are the fallback whenever {@link #isLive()} is false. A connection that hears nothing back, not even
+ * a pong, for two keepalive intervals is dropped, so a half-open socket cannot keep heartbeats relaxed.
+ *
+ * <p>Frames: client {@code hello {resume}} and {@code events [{seq, op, player}]}; server
+ * {@code welcome {resumed, ackedSequence, keepaliveSeconds}} and {@code ack {ackedSequence}}.
+ */
+public class PresenceChannel {
+
+    private static final long BATCH_WINDOW_MILLIS = 250;
+    private static final int MAX_UNACKED_EVENTS = 1024;
+    private static final long MIN_RECONNECT_MILLIS = 1000;
+    private static final long MAX_RECONNECT_MILLIS = 60_000;
+    // An API without the endpoint is asked again only rarely.
+    private static final long UNSUPPORTED_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    private static final int SILENT_INTERVALS_BEFORE_DROP = 2;
+
+    private final ConfigManager config;
+    private final HttpTransport transport;
+    private final PluginExecutors executors;
+    private final Logger logger;
+    private final Runnable onResyncNeeded;
+
+    private final ArrayDeque<Event> unacked = new ArrayDeque<>();
+    private final List<Event> unsent = new ArrayList<>();
+    private long nextSequence = 1;
+    private long ackedSequence = 0;
+    private boolean overflowed = false;
+
+    private volatile boolean running = false;
+    private volatile boolean live = false;
+    private WebSocket socket;
+    private CompletableFuture<?> sendChain = CompletableFuture.completedFuture(null);
+    private ScheduledFuture<?> flushTask;
+    private ScheduledFuture<?> keepaliveTask;
+    private ScheduledFuture<?> reconnectTask;
+    private int failedAttempts = 0;
+    private long keepaliveNanos;
+    private volatile long lastHeardNanos;
+
+    public PresenceChannel(ConfigManager config, HttpTransport transport, PluginExecutors executors, Logger logger,
+                           Runnable onResyncNeeded) {
+        this.config = config;
+        this.transport = transport;
+        this.executors = executors;
+        this.logger = logger;
+        this.onResyncNeeded = onResyncNeeded;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        failedAttempts = 0;
+        connect();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        live = false;
+        cancel(flushTask);
+        cancel(keepaliveTask);
+        cancel(reconnectTask);
+        flushTask = keepaliveTask = reconnectTask = null;
+        if (socket != null) {
+            WebSocket closing = socket;
+            socket = null;
+            sendChain.whenComplete((v, e) -> closing.sendClose(WebSocket.NORMAL_CLOSURE, "stopping"));
+        }
+    }
+
+    /** True while connected and handshaken; the heartbeat may then relax its pace. */
+    public boolean isLive() {
+        return live;
+    }
+
+    public void playerJoined(UUID player) {
+        record("join", player);
+    }
+
+    public void playerLeft(UUID player) {
+        record("leave", player);
+    }
+
+    private synchronized void record(String op, UUID player) {
+        if (!running) return;
+        Event event = new Event(nextSequence++, op, player);
+        unacked.addLast(event);
+        if (unacked.size() > MAX_UNACKED_EVENTS) {
+            // Too far behind to resume; the next welcome will trigger a full snapshot instead.
+            unacked.removeFirst();
+            overflowed = true;
+        }
+        if (!live) return;
+        unsent.add(event);
+        if (flushTask == null) {
+            flushTask = executors.scheduler().schedule(this::flush, BATCH_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void flush() {
+        flushTask = null;
+        if (!live || unsent.isEmpty()) return;
+        send(eventsFrame(unsent));
+        unsent.clear();
+    }
+
+    private void connect() {
+        URI uri = URI.create(toWebSocketUrl(transport.endpoint().baseUrl()) + "/serverlinker/presence");
+        String token = config.getServerToken();
+        if (token == null) {
+            stop();
+            return;
+        }
+        transport.endpoint().httpClient().newWebSocketBuilder()
+                .header("X-Server-Token", token)
+                .connectTimeout(Duration.ofSeconds(10))
+                .buildAsync(uri, new Listener())
+                .whenComplete((ws, e) -> {
+                    if (e != null) {
+                        onDisconnected(null, e);
+                        return;
+                    }
+                    synchronized (this) {
+                        if (!running) {
+                            ws.sendClose(WebSocket.NORMAL_CLOSURE, "stopping");
+                            return;
+                        }
+                        socket = ws;
+                        sendChain = CompletableFuture.completedFuture(null);
+                        lastHeardNanos = System.nanoTime();
+                        // Until the welcome names an interval, so a silent handshake is caught too. The welcome
+                        // may already have arrived and scheduled its own.
+                        if (keepaliveTask == null) {
+                            scheduleKeepalive(config.getPresenceKeepaliveSeconds());
+                        }
+                        send("{\"type\":\"hello\",\"resume\":" + (overflowed ? -1 : ackedSequence) + "}");
+                    }
+                });
+    }
+
+    static String toWebSocketUrl(String baseUrl) {
+        if (baseUrl.startsWith("https://")) return "wss://" + baseUrl.substring("https://".length());
+        if (baseUrl.startsWith("http://")) return "ws://" + baseUrl.substring("http://".length());
+        return baseUrl;
+    }
+
+    /** WebSocket allows one outstanding send, so frames are chained. */
+    private synchronized void send(String frame) {
+        WebSocket ws = socket;
+        if (ws == null) return;
+        sendChain = sendChain.thenCompose(v -> ws.sendText(frame, true))
+                .exceptionally(e -> {
+                    ws.abort();
+                    onDisconnected(ws, e);
+                    return null;
+                });
+    }
+
+    private synchronized void onWelcome(ResponseReader.Fields fields) {
+        failedAttempts = 0;
+        live = true;
+        if (fields.resumed && !overflowed) {
+            acknowledge(fields.ackedSequence);
+            if (!unacked.isEmpty()) {
+                send(eventsFrame(unacked));
+            }
+        } else {
+            // The API lost our place: start clean and let the next heartbeat carry a full snapshot.
+            unacked.clear();
+            overflowed = false;
+            ackedSequence = nextSequence - 1;
+            executors.io().execute(onResyncNeeded);
+        }
+        scheduleKeepalive(fields.keepaliveSeconds > 0 ? fields.keepaliveSeconds
+                : config.getPresenceKeepaliveSeconds());
+        logger.info("Live presence channel " + (fields.resumed ? "resumed" : "connected"));
+    }
+
+    private synchronized void scheduleKeepalive(long seconds) {
+        long keepalive = Math.max(5, seconds);
+        keepaliveNanos = TimeUnit.SECONDS.toNanos(keepalive);
+        cancel(keepaliveTask);
+        keepaliveTask = executors.scheduler()
+                .scheduleWithFixedDelay(this::keepalive, keepalive, keepalive, TimeUnit.SECONDS);
+    }
+
+    private synchronized void keepalive() {
+        WebSocket ws = socket;
+        if (ws == null) return;
+        if (System.nanoTime() - lastHeardNanos > SILENT_INTERVALS_BEFORE_DROP * keepaliveNanos) {
+            // Pings are going out but nothing comes back: the connection is half-open.
+            logger.info("Live presence channel stopped answering, reconnecting");
+            ws.abort();
+            onDisconnected(ws, null);
+            return;
+        }
+        sendChain = sendChain.thenCompose(v -> ws.sendPing(ByteBuffer.allocate(0)))
+                .exceptionally(e -> {
+                    ws.abort();
+                    onDisconnected(ws, e);
+                    return null;
+                });
+    }
+
+    private synchronized void acknowledge(long sequence) {
+        if (sequence <= ackedSequence) return;
+        ackedSequence = sequence;
+        while (!unacked.isEmpty() && unacked.peekFirst().sequence() <= sequence) {
+            unacked.removeFirst();
+        }
+    }
+
+    private synchronized void onDisconnected(WebSocket ws, Throwable cause) {
+        // A late callback from a connection that has already been dropped or replaced.
+        if (ws != null && socket != ws) return;
+        live = false;
+        socket = null;
+        unsent.clear();
+        cancel(flushTask);
+        cancel(keepaliveTask);
+        flushTask = keepaliveTask = null;
+        if (!running) return;
+
+        long delay;
+        if (isHandshakeRejected(cause)) {
+            logger.info("Live presence channel not available, using heartbeats only");
+            delay = UNSUPPORTED_RETRY_MILLIS;
+        } else {
+            failedAttempts++;
+            long ceiling = Math.min(MIN_RECONNECT_MILLIS << Math.min(failedAttempts - 1, 16), MAX_RECONNECT_MILLIS);
+            delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        }
+        cancel(reconnectTask);
+        reconnectTask = executors.scheduler().schedule(() -> executors.io().execute(this::reconnect),
+                delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void reconnect() {
+        synchronized (this) {
+            reconnectTask = null;
+            if (!running || socket != null) return;
+        }
+        connect();
+    }
+
+    private static boolean isHandshakeRejected(Throwable cause) {
+        for (Throwable e = cause; e != null; e = e.getCause()) {
+            if (e instanceof WebSocketHandshakeException handshake) {
+                int status = handshake.getResponse().statusCode();
+                return status == 404 || status == 405 || status == 426 || status == 501;
+            }
+        }
+        return false;
+    }
+
+    private static String eventsFrame(Iterable<Event> events) {
+        StringBuilder frame = new StringBuilder(64).append("{\"type\":\"events\",\"events\":[");
+        boolean first = true;
+        for (Event event : events) {
+            if (!first) frame.append(',');
+            frame.append("{\"seq\":").append(event.sequence())
+                    .append(",\"op\":\"").append(event.op())
+                    .append("\",\"player\":\"").append(event.player()).append("\"}");
+            first = false;
+        }
+        return frame.append("]}").toString();
+    }
+
+    private static void cancel(ScheduledFuture<?> task) {
+        if (task != null) task.cancel(false);
+    }
+
+    private record Event(long sequence, String op, UUID player) {}
+
+    private final class Listener implements WebSocket.Listener {
+
+        private final StringBuilder partial = new StringBuilder();
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            lastHeardNanos = System.nanoTime();
+            partial.append(data);
+            if (last) {
+                String text = partial.toString();
+                partial.setLength(0);
+                ResponseReader.Fields fields = ResponseReader.read(text.getBytes(StandardCharsets.UTF_8));
+                if ("welcome".equals(fields.type)) {
+                    onWelcome(fields);
+                } else if ("ack".equals(fields.type)) {
+                    acknowledge(fields.ackedSequence);
+                }
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onPong(WebSocket webSocket, ByteBuffer message) {
+            lastHeardNanos = System.nanoTime();
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            onDisconnected(webSocket, null);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            onDisconnected(webSocket, error);
+        }
+    }
+}
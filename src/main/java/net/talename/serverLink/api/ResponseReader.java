@@ -0,0 +1,135 @@
+package net.talename.serverLink.api;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Streams the handful of fields the plugin cares about out of API responses, skipping everything else,
+ * instead of materialising a {@code JsonObject} per response.
+ */
+class ResponseReader {
+
+    private ResponseReader() {}
+
+    static Fields read(byte[] body) {
+        return read(body, null);
+    }
+
+    /**
+     * @param results if non-null, receives one {@link Fields} per entry of a batch response's {@code results} array
+     */
+    static Fields read(byte[] body, List<Fields> results) {
+        Fields fields = new Fields();
+        if (body == null || body.length == 0) {
+            return fields;
+        }
+        try (JsonReader reader = open(body)) {
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readObject(reader, fields, results);
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // Malformed bodies are treated as carrying no fields; the status code still applies.
+        }
+        return fields;
+    }
+
+    private static JsonReader open(byte[] body) {
+        return new JsonReader(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+    }
+
+    private static void readObject(JsonReader reader, Fields fields, List<Fields> results) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "status" -> fields.status = reader.nextInt();
+                case "error" -> fields.error = reader.nextString();
+                case "message" -> fields.message = reader.nextString();
+                case "serverToken" -> fields.serverToken = reader.nextString();
+                case "serverId" -> fields.serverId = reader.nextLong();
+                case "deltaSupported" -> fields.deltaSupported = reader.nextBoolean();
+                case "resync" -> fields.resync = reader.nextBoolean();
+                case "nextHeartbeatSeconds" -> fields.nextHeartbeatMillis = Math.round(reader.nextDouble() * 1000);
+                case "detail" -> fields.detail = TaleNameAPI.DetailLevel.parse(reader.nextString());
+                case "type" -> fields.type = reader.nextString();
+                case "resumed" -> fields.resumed = reader.nextBoolean();
+                case "ackedSequence" -> fields.ackedSequence = reader.nextLong();
+                case "keepaliveSeconds" -> fields.keepaliveSeconds = reader.nextInt();
+                case "results" -> {
+                    if (results == null || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Fields entry = new Fields();
+                        if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                            readObject(reader, entry, null);
+                        } else {
+                            reader.skipValue();
+                        }
+                        results.add(entry);
+                    }
+                    reader.endArray();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Parses {@code Retry-After} as either delta-seconds or an HTTP-date.
+     *
+     * @return the delay in milliseconds, or -1 if absent or unparseable
+     */
+    static long retryAfterMillis(HttpResponse<?> response) {
+        String value = response.headers().firstValue("Retry-After").orElse(null);
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        value = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            ZonedDateTime when = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(when.getZone()), when).toMillis());
+        } catch (DateTimeParseException ignored) {
+            return -1;
+        }
+    }
+
+    static final class Fields {
+        int status = -1;
+        String error;
+        String message;
+        String serverToken;
+        Long serverId;
+        boolean deltaSupported;
+        boolean resync;
+        long nextHeartbeatMillis = -1;
+        TaleNameAPI.DetailLevel detail;
+        // Presence channel frames.
+        String type;
+        boolean resumed;
+        long ackedSequence = -1;
+        int keepaliveSeconds = -1;
+    }
+}
@@ -1,145 +1,394 @@
 package net.talename.serverLink.api;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import net.talename.serverLink.Main;
-
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLParameters;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
+import net.talename.serverLink.PluginContext;
+import net.talename.serverLink.config.ConfigManager;
+import net.talename.serverLink.service.LinkMetrics;
+
+import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.security.SecureRandom;
-import java.security.cert.X509Certificate;
+import java.net.http.HttpTimeoutException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
 
 public class TaleNameAPI {
 
-    private final Main plugin;
-    private final HttpClient httpClient;
-    private final Gson gson;
-    private final String baseUrl;
+    private static final int MAX_SPARE_BUFFER_BYTES = 1 << 20;
+
+    private final ConfigManager config;
+    private final HttpTransport transport;
+    private final LinkMetrics metrics;
+    private final HeartbeatEncoder encoder = new HeartbeatEncoder();
+    private final PayloadCompressor compressor = new PayloadCompressor();
+    // Heartbeats rarely overlap, so a couple of spare buffers (body + compressed body) avoid reallocating every interval.
+    private final ArrayBlockingQueue<PayloadBuffer> spareBuffers = new ArrayBlockingQueue<>(2);
+    private final LongAdder bytesBeforeCompression = new LongAdder();
+    private final LongAdder bytesAfterCompression = new LongAdder();
+    private final LongAdder responseBytesSaved = new LongAdder();
+    private volatile boolean binaryAccepted = false;
 
-    public TaleNameAPI(Main plugin) {
-        this.plugin = plugin;
-        this.gson = new Gson();
-        this.baseUrl = plugin.getConfigManager().getApiBaseUrl();
-        this.httpClient = plugin.getConfigManager().isDevMode()
-                ? createInsecureHttpClient()
-                : HttpClient.newBuilder()
-                    .connectTimeout(Duration.ofSeconds(10))
-                    .build();
+    public TaleNameAPI(PluginContext plugin) {
+        this(plugin.getConfigManager(), plugin.getTransport(), plugin.getMetrics());
     }
 
-    private static HttpClient createInsecureHttpClient() {
-        try {
-            TrustManager[] trustAll = new TrustManager[] {
-                    new X509TrustManager() {
-                        @Override
-                        public void checkClientTrusted(X509Certificate[] chain, String authType) {}
+    /** For running the client outside the plugin, e.g. in the load generator. */
+    public TaleNameAPI(ConfigManager config, HttpTransport transport, LinkMetrics metrics) {
+        this.config = config;
+        this.transport = transport;
+        this.metrics = metrics;
+    }
+
+    public CompletableFuture<LinkResponse> linkServer(String linkCode, ServerInfo serverInfo) {
+        return linkServer(linkCode, serverInfo, UUID.randomUUID().toString());
+    }
 
-                        @Override
-                        public void checkServerTrusted(X509Certificate[] chain, String authType) {}
+    /**
+     * @param idempotencyKey the same for every retry of one link operation, so the API can answer a retry whose
+     *                       predecessor already redeemed the code with that predecessor's result
+     */
+    public CompletableFuture<LinkResponse> linkServer(String linkCode, ServerInfo serverInfo, String idempotencyKey) {
+        PayloadBuffer body = new PayloadBuffer(256);
+        encoder.writeLinkJson(linkCode.toUpperCase(), serverInfo, body);
 
-                        @Override
-                        public X509Certificate[] getAcceptedIssuers() {
-                            return new X509Certificate[0];
+        // Also sent to a second endpoint if the first is slow. A success from either wins over an error
+        // from the other, such as the duplicate being told the code was already used.
+        Duration hedgeDelay = Duration.ofMillis(config.getLinkHedgeDelayMillis());
+        return transport.sendHedged(baseUrl -> HttpRequest.newBuilder()
+                        .uri(URI.create(baseUrl + "/serverlinker/link"))
+                        .header("Content-Type", HeartbeatEncoder.JSON_TYPE)
+                        .header("Accept-Encoding", "gzip")
+                        .header("Idempotency-Key", idempotencyKey)
+                        .timeout(Duration.ofSeconds(30))
+                        .POST(body.publisher())
+                        .build(), hedgeDelay)
+                .thenApply(response -> {
+                    ResponseReader.Fields fields = ResponseReader.read(decodeBody(response));
+                    if (response.statusCode() == 200) {
+                        if (fields.serverToken == null || fields.serverId == null) {
+                            return new LinkResponse(false, null, null, "Invalid response from TaleName", true);
                         }
+                        return new LinkResponse(true, fields.serverToken, fields.serverId,
+                                fields.message != null ? fields.message : "Success", false);
                     }
-            };
+                    int status = response.statusCode();
+                    return new LinkResponse(false, null, null, fields.error != null ? fields.error : "Unknown error",
+                            status >= 500 || status == 408 || status == 429);
+                })
+                .exceptionally(e -> new LinkResponse(false, null, null, "Connection failed: " + e.getMessage(), true));
+    }
 
-            SSLContext sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(null, trustAll, new SecureRandom());
+    public CompletableFuture<HeartbeatResponse> sendHeartbeat(String serverToken, HeartbeatData data) {
+        long encodeStarted = System.nanoTime();
+        boolean binary = binaryAccepted && config.isBinaryHeartbeatsEnabled();
+        PayloadBuffer body = acquireBuffer();
+        if (binary) {
+            encoder.writeHeartbeatBinary(data, body);
+        } else {
+            encoder.writeHeartbeatJson(data, body);
+        }
 
-            SSLParameters sslParameters = new SSLParameters();
-            // Disable hostname verification (dev mode only).
-            sslParameters.setEndpointIdentificationAlgorithm(null);
+        return post("/serverlinker/heartbeat", serverToken, body,
+                binary ? HeartbeatEncoder.BINARY_TYPE : HeartbeatEncoder.JSON_TYPE, encodeStarted)
+                .thenApply(response -> {
+                    updateBinaryNegotiation(response);
+                    return toHeartbeatResponse(response, response.statusCode(), ResponseReader.read(decodeBody(response)));
+                })
+                .exceptionally(e -> new HeartbeatResponse(false, "Connection failed", false, false));
+    }
 
-            return HttpClient.newBuilder()
-                    .connectTimeout(Duration.ofSeconds(10))
-                    .sslContext(sslContext)
-                    .sslParameters(sslParameters)
-                    .build();
-        } catch (Exception e) {
-            // If something goes wrong, fall back to the default client.
-            return HttpClient.newBuilder()
-                    .connectTimeout(Duration.ofSeconds(10))
-                    .build();
-        }
+    /**
+     * Sends this server's heartbeat together with the pre-encoded heartbeats collected from sibling instances.
+     * Member bodies are spliced into the batch as-is, so the aggregator never re-parses them.
+     */
+    public CompletableFuture<BatchResponse> sendHeartbeatBatch(String serverToken, HeartbeatData data,
+                                                               List<BatchEntry> members) {
+        long encodeStarted = System.nanoTime();
+        PayloadBuffer body = acquireBuffer();
+        encoder.writeBatchJson(serverToken, data, members, body);
+
+        return post("/serverlinker/heartbeat/batch", serverToken, body, HeartbeatEncoder.JSON_TYPE, encodeStarted)
+                .thenApply(response -> {
+                    if (response.statusCode() == 404) {
+                        return BatchResponse.unsupported();
+                    }
+                    List<ResponseReader.Fields> results = new ArrayList<>(members.size() + 1);
+                    ResponseReader.Fields fields = ResponseReader.read(decodeBody(response), results);
+                    if (response.statusCode() != 200 || results.isEmpty()) {
+                        // A failure of the batch as a whole (our token, a 429, a proxy error) says nothing about
+                        // any member's token: their heartbeats are simply undelivered.
+                        HeartbeatResponse failed = toHeartbeatResponse(response, response.statusCode(), fields);
+                        return new BatchResponse(true, failed, Collections.nCopies(members.size(), null));
+                    }
+                    List<HeartbeatResponse> responses = new ArrayList<>(results.size());
+                    for (ResponseReader.Fields result : results) {
+                        responses.add(toHeartbeatResponse(response, result.status >= 0 ? result.status : 500, result));
+                    }
+                    HeartbeatResponse own = responses.get(0);
+                    List<HeartbeatResponse> memberResponses = new ArrayList<>(members.size());
+                    for (int i = 0; i < members.size(); i++) {
+                        memberResponses.add(i + 1 < responses.size() ? responses.get(i + 1) : null);
+                    }
+                    return new BatchResponse(true, own, memberResponses);
+                })
+                .exceptionally(e -> {
+                    HeartbeatResponse failed = new HeartbeatResponse(false, "Connection failed", false, false);
+                    return new BatchResponse(true, failed, Collections.nCopies(members.size(), null));
+                });
     }
 
-    public CompletableFuture<LinkResponse> linkServer(String linkCode, ServerInfo serverInfo) {
-        JsonObject body = new JsonObject();
-        body.addProperty("linkCode", linkCode.toUpperCase());
-        
-        JsonObject serverInfoJson = new JsonObject();
-        serverInfoJson.addProperty("software", serverInfo.software);
-        serverInfoJson.addProperty("motd", serverInfo.motd);
-        serverInfoJson.addProperty("maxPlayers", serverInfo.maxPlayers);
-        body.add("serverInfo", serverInfoJson);
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl + "/serverlinker/link"))
-                .header("Content-Type", "application/json")
-                .timeout(Duration.ofSeconds(30))
-                .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(body)))
-                .build();
+    /**
+     * Re-delivers heartbeats that were spooled during an outage, oldest first, each with its original timestamp.
+     */
+    public CompletableFuture<ReplayResponse> replayHeartbeats(String serverToken, List<ReplayEntry> entries) {
+        long encodeStarted = System.nanoTime();
+        PayloadBuffer body = acquireBuffer();
+        encoder.writeReplayJson(entries, body);
 
-        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+        return post("/serverlinker/heartbeat/replay", serverToken, body, HeartbeatEncoder.JSON_TYPE, encodeStarted)
                 .thenApply(response -> {
-                    JsonObject json = gson.fromJson(response.body(), JsonObject.class);
-                    if (response.statusCode() == 200) {
-                        return new LinkResponse(true,
-                                json.has("serverToken") ? json.get("serverToken").getAsString() : null,
-                                json.has("serverId") ? json.get("serverId").getAsLong() : null,
-                                json.has("message") ? json.get("message").getAsString() : "Success");
+                    if (response.statusCode() == 404) {
+                        return ReplayResponse.unsupported();
                     }
-                    return new LinkResponse(false, null, null,
-                            json.has("error") ? json.get("error").getAsString() : "Unknown error");
+                    return new ReplayResponse(true, toHeartbeatResponse(response, response.statusCode(),
+                            ResponseReader.read(decodeBody(response))));
                 })
-                .exceptionally(e -> new LinkResponse(false, null, null, "Connection failed: " + e.getMessage()));
+                .exceptionally(e -> new ReplayResponse(true,
+                        new HeartbeatResponse(false, "Connection failed", false, false)));
     }
 
-    public CompletableFuture<HeartbeatResponse> sendHeartbeat(String serverToken, HeartbeatData data) {
-        JsonObject body = new JsonObject();
-        body.addProperty("playersOnline", data.playersOnline);
-        body.addProperty("maxPlayers", data.maxPlayers);
-        if (data.playerList != null && !data.playerList.isEmpty()) {
-            body.add("playerList", gson.toJsonTree(data.playerList));
+    /** Encodes a heartbeat as standalone JSON, for aggregator members and the offline spool. */
+    public byte[] encodeHeartbeatJson(HeartbeatData data) {
+        PayloadBuffer body = acquireBuffer();
+        try {
+            encoder.writeHeartbeatJson(data, body);
+            return Arrays.copyOf(body.array(), body.length());
+        } finally {
+            releaseBuffer(body);
         }
+    }
+
+    private CompletableFuture<HttpResponse<byte[]>> post(String path, String serverToken, PayloadBuffer body,
+                                                         String contentType, long encodeStarted) {
+        PayloadBuffer compressed = compressIfWorthwhile(body);
+        PayloadBuffer payload = compressed != null ? compressed : body;
+        int sent = payload.length();
+        long started = System.nanoTime();
+        metrics.recordSerialization(started - encodeStarted);
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl + "/serverlinker/heartbeat"))
-                .header("Content-Type", "application/json")
+        HttpTransport.Endpoint endpoint = transport.endpoint();
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(endpoint.baseUrl() + path))
+                .header("Content-Type", contentType)
+                .header("Accept-Encoding", "gzip")
                 .header("X-Server-Token", serverToken)
+                .header("X-Heartbeat-Delta", "1")
                 .timeout(Duration.ofSeconds(30))
-                .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(body)))
-                .build();
+                .POST(payload.publisherCopy());
+        if (compressed != null) {
+            builder.header("Content-Encoding", "gzip");
+        }
+        // The request holds its own copy, so the pooled buffers are free for the next encode right away.
+        releaseBuffer(body);
+        if (compressed != null) releaseBuffer(compressed);
 
-        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-                .thenApply(response -> {
-                    if (response.statusCode() == 200) {
-                        return new HeartbeatResponse(true, "OK");
-                    } else if (response.statusCode() == 401) {
-                        return new HeartbeatResponse(false, "Invalid server token");
+        return transport.send(endpoint, builder.build())
+                .whenComplete((response, e) -> {
+                    long rtt = System.nanoTime() - started;
+                    if (response != null) {
+                        metrics.recordResponse(rtt, response.statusCode(), sent,
+                                response.body() != null ? response.body().length : 0);
+                    } else {
+                        metrics.recordFailure(rtt, isTimeout(e), sent);
                     }
-                    JsonObject json = gson.fromJson(response.body(), JsonObject.class);
-                    return new HeartbeatResponse(false, json.has("error") ? json.get("error").getAsString() : "Error");
-                })
-                .exceptionally(e -> new HeartbeatResponse(false, "Connection failed"));
+                });
+    }
+
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpTimeoutException) return true;
+        }
+        return false;
+    }
+
+    private static HeartbeatResponse toHeartbeatResponse(HttpResponse<?> response, int status,
+                                                         ResponseReader.Fields fields) {
+        long nextDelay = fields.nextHeartbeatMillis;
+        if (status == 429 || status == 503) {
+            nextDelay = Math.max(nextDelay, ResponseReader.retryAfterMillis(response));
+        }
+        if (status == 200) {
+            return new HeartbeatResponse(true, "OK", fields.deltaSupported, fields.resync, nextDelay, fields.detail);
+        } else if (status == 401) {
+            return HeartbeatResponse.invalidToken();
+        } else if (status == 409) {
+            // The API missed a sequence and wants a full snapshot.
+            return new HeartbeatResponse(false, "Resync requested", fields.deltaSupported, true, nextDelay, fields.detail);
+        } else if (status == 429) {
+            return new HeartbeatResponse(false, "Rate limited", fields.deltaSupported, fields.resync, nextDelay, fields.detail);
+        }
+        return new HeartbeatResponse(false, fields.error != null ? fields.error : "Error",
+                fields.deltaSupported, fields.resync, nextDelay, fields.detail);
+    }
+
+    private PayloadBuffer compressIfWorthwhile(PayloadBuffer body) {
+        if (!config.isCompressionEnabled()
+                || body.length() < config.getCompressionThresholdBytes()) {
+            return null;
+        }
+        PayloadBuffer compressed = acquireBuffer();
+        compressor.gzip(body, compressed);
+        if (compressed.length() >= body.length()) {
+            // Already-dense payloads (e.g. binary UUIDs) can grow under gzip; send them as-is.
+            releaseBuffer(compressed);
+            return null;
+        }
+        bytesBeforeCompression.add(body.length());
+        bytesAfterCompression.add(compressed.length());
+        return compressed;
+    }
+
+    private byte[] decodeBody(HttpResponse<byte[]> response) {
+        byte[] raw = response.body();
+        if (raw == null || raw.length == 0) {
+            return raw;
+        }
+        boolean gzipped = response.headers().firstValue("Content-Encoding")
+                .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                .orElse(false);
+        if (gzipped) {
+            try {
+                byte[] inflated = PayloadCompressor.gunzip(raw);
+                responseBytesSaved.add(inflated.length - raw.length);
+                raw = inflated;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return raw;
+    }
+
+    /** Bytes not sent or received thanks to gzip, since the plugin started. */
+    public long getBytesSaved() {
+        return bytesBeforeCompression.sum() - bytesAfterCompression.sum() + responseBytesSaved.sum();
+    }
+
+    /** Releases the compressor; requests sent afterwards fail. */
+    public void close() {
+        compressor.close();
+    }
+
+    private PayloadBuffer acquireBuffer() {
+        PayloadBuffer buffer = spareBuffers.poll();
+        if (buffer == null) {
+            buffer = new PayloadBuffer(4096);
+        }
+        buffer.reset();
+        return buffer;
+    }
+
+    private void releaseBuffer(PayloadBuffer buffer) {
+        // Don't pin a buffer that grew for an unusually large payload.
+        if (buffer.capacity() <= MAX_SPARE_BUFFER_BYTES) {
+            spareBuffers.offer(buffer);
+        }
+    }
+
+    private void updateBinaryNegotiation(HttpResponse<?> response) {
+        if (response.statusCode() == 415) {
+            binaryAccepted = false;
+            return;
+        }
+        response.headers().firstValue("Accept-Post")
+                .ifPresent(accepted -> binaryAccepted = accepted.contains(HeartbeatEncoder.BINARY_TYPE));
     }
 
     // Response classes
-    public record LinkResponse(boolean success, String serverToken, Long serverId, String message) {}
-    public record HeartbeatResponse(boolean success, String message) {}
+    /** @param retryable whether the same request may succeed later (network error, 5xx, 429), unlike a rejected code */
+    public record LinkResponse(boolean success, String serverToken, Long serverId, String message, boolean retryable) {}
+    /**
+     * @param nextHeartbeatMillis server-directed delay before the next heartbeat (body field or {@code Retry-After}), -1 if none
+     * @param detail payload detail the server asked for, or null to keep the current level
+     * @param tokenRejected the API answered 401 for this heartbeat's own token
+     */
+    public record HeartbeatResponse(boolean success, String message, boolean deltaSupported, boolean resyncRequested,
+                                    long nextHeartbeatMillis, DetailLevel detail, boolean tokenRejected) {
+        public HeartbeatResponse(boolean success, String message, boolean deltaSupported, boolean resyncRequested,
+                                 long nextHeartbeatMillis, DetailLevel detail) {
+            this(success, message, deltaSupported, resyncRequested, nextHeartbeatMillis, detail, false);
+        }
+
+        public HeartbeatResponse(boolean success, String message, boolean deltaSupported, boolean resyncRequested) {
+            this(success, message, deltaSupported, resyncRequested, -1, null);
+        }
+
+        public static HeartbeatResponse invalidToken() {
+            return new HeartbeatResponse(false, "Invalid server token", false, false, -1, null, true);
+        }
+    }
+    /** @param members one result per member entry, null where the batch did not report one */
+    public record BatchResponse(boolean supported, HeartbeatResponse own, List<HeartbeatResponse> members) {
+        static BatchResponse unsupported() {
+            return new BatchResponse(false, null, List.of());
+        }
+    }
+
+    public record ReplayResponse(boolean supported, HeartbeatResponse result) {
+        static ReplayResponse unsupported() {
+            return new ReplayResponse(false, null);
+        }
+    }
+
+    public enum DetailLevel {
+        FULL, DELTA, COUNT;
+
+        static DetailLevel parse(String value) {
+            return switch (value.toLowerCase()) {
+                case "full" -> FULL;
+                case "delta" -> DELTA;
+                case "count", "count-only", "count_only" -> COUNT;
+                default -> null;
+            };
+        }
+    }
 
     // Data classes
+    public record BatchEntry(String serverToken, byte[] body) {}
+    public record ReplayEntry(long timestamp, byte[] body) {}
     public record ServerInfo(String name, String software, String motd, int maxPlayers) {}
-    public record HeartbeatData(int playersOnline, int maxPlayers, String motd, List<UUID> playerList) {}
+    public record HeartbeatData(int playersOnline, int maxPlayers, String motd, List<UUID> playerList,
+                                long sequence, long baseSequence, List<UUID> joined, List<UUID> left,
+                                HealthSummary health, UniquePlayers uniquePlayers, List<WorldCount> worlds) {
+        public HeartbeatData(int playersOnline, int maxPlayers, String motd, List<UUID> playerList,
+                             long sequence, long baseSequence, List<UUID> joined, List<UUID> left) {
+            this(playersOnline, maxPlayers, motd, playerList, sequence, baseSequence, joined, left, null, null, null);
+        }
+
+        public boolean isDelta() {
+            return joined != null;
+        }
+
+        /** A full list cut to {@code playerListCap}: it holds some, not all, of the online players. */
+        public boolean isPlayerListTruncated() {
+            return !isDelta() && playerList != null && playerList.size() < playersOnline;
+        }
+    }
+
+    /** Server health since the previous heartbeat. Tick lag is in microseconds; -1 means unavailable. */
+    public record HealthSummary(int samples, long tickLagP50Micros, long tickLagP95Micros, long tickLagP99Micros,
+                                long tickLagMaxMicros, long heapPeakBytes, long heapMaxBytes, long nonHeapBytes,
+                                long directBytes, long gcPauseMillis, long gcCount) {}
+
+    /** HyperLogLog registers of distinct players over the last hour and day; each array is {@code 2^precision} bytes. */
+    public record UniquePlayers(int precision, byte[] hour, byte[] day) {}
+
+    /** Players in one world; worlds left out of a heartbeat are empty. */
+    public record WorldCount(String world, int players) {}
 }
@@ -9,22 +9,22 @@ import com.hypixel.hytale.server.core.command.system.arguments.types.ArgTypes;
 import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
 import com.hypixel.hytale.server.core.universe.Universe;
 import net.talename.serverLink.Main;
+import net.talename.serverLink.PluginRuntime;
 import net.talename.serverLink.api.TaleNameAPI;
+import net.talename.serverLink.service.LinkService;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 import javax.annotation.Nonnull;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.List;
 
 public class TaleNameCommand extends CommandBase {
 
     private final Main plugin;
-
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final PluginRuntime runtime;
 
     @Nonnull
     private final RequiredArg<String> subArg =
-            withRequiredArg("subcommand", "link/unlink/status/heartbeat", ArgTypes.STRING);
+            withRequiredArg("subcommand", "link/unlink/status/heartbeat/metrics/worlds", ArgTypes.STRING);
 
     @Nonnull
     private final OptionalArg<String> codeArg =
@@ -33,6 +33,7 @@ public class TaleNameCommand extends CommandBase {
     public TaleNameCommand(Main plugin) {
         super("talename", "TaleName server linking", false);
         this.plugin = plugin;
+        this.runtime = plugin.getRuntime();
     }
 
     @Override
@@ -52,6 +53,12 @@ public class TaleNameCommand extends CommandBase {
             case "heartbeat":
                 handleHeartbeat(commandContext);
                 break;
+            case "metrics":
+                handleMetrics(commandContext);
+                break;
+            case "worlds":
+                handleWorlds(commandContext);
+                break;
             default:
                 sendHelp(commandContext);
                 break;
@@ -64,12 +71,14 @@ public class TaleNameCommand extends CommandBase {
         ctx.sendMessage(Message.raw("/talename unlink - Unlink server"));
         ctx.sendMessage(Message.raw("/talename status - Check status"));
         ctx.sendMessage(Message.raw("/talename heartbeat - Force send heartbeat"));
+        ctx.sendMessage(Message.raw("/talename metrics - Show link metrics"));
+        ctx.sendMessage(Message.raw("/talename worlds - Show players per world"));
     }
 
     private void handleLink(CommandContext ctx) {
         String linkCode = codeArg.get(ctx);
 
-        if (plugin.getConfigManager().isLinked()) {
+        if (runtime.getConfigManager().isLinked()) {
             ctx.sendMessage(Message.raw("Server already linked! Use /talename unlink first."));
             return;
         }
@@ -79,62 +88,92 @@ public class TaleNameCommand extends CommandBase {
             return;
         }
 
-        ctx.sendMessage(Message.raw("Linking..."));
-
         HytaleServer server = HytaleServer.get();
 
         TaleNameAPI.ServerInfo info = new TaleNameAPI.ServerInfo(server.getServerName(),
                 "Hytale", server.getConfig().getMotd(), server.getConfig().getMaxPlayers()
         );
 
-        plugin.getHeartbeatService().getApi().linkServer(linkCode.toUpperCase(), info)
-                .thenAccept(response -> {
-                    // Use ScheduledExecutorService instead of server scheduler
-                    scheduler.execute(() -> {
-                        if (response.success()) {
-                            plugin.getConfigManager().setLinkData(response.serverToken(), response.serverId());
-                            ctx.sendMessage(Message.raw("Server linked! ID: " + response.serverId()));
-                            plugin.getHeartbeatService().start();
-                        } else {
-                            ctx.sendMessage(Message.raw("Failed: " + response.message()));
-                        }
-                    });
-                });
+        // Returns at once; progress and the result reach the operator from the link service's threads.
+        runtime.getLinkService().link(linkCode.toUpperCase(), info, message -> ctx.sendMessage(Message.raw(message)));
     }
 
     private void handleUnlink(CommandContext ctx) {
         // /talename unlink
-        if (!plugin.getConfigManager().isLinked()) {
+        LinkService.State cancelled = runtime.getLinkService().cancel();
+        if (cancelled == LinkService.State.LINKING) {
+            ctx.sendMessage(Message.raw("Link cancelled; the attempt already sent may still link the server"));
+            return;
+        } else if (cancelled != LinkService.State.IDLE) {
+            ctx.sendMessage(Message.raw("Link attempt cancelled"));
+            return;
+        }
+        if (!runtime.getConfigManager().isLinked()) {
             ctx.sendMessage(Message.raw("Server is not linked!"));
             return;
         }
-        plugin.getHeartbeatService().stop();
-        plugin.getConfigManager().clearLinkData();
+        runtime.getHeartbeatService().stop();
+        runtime.getConfigManager().clearLinkData();
     }
 
     private void handleStatus(CommandContext ctx) {
         // /talename status
         ctx.sendMessage(Message.raw("=== TaleName Status ==="));
 
-        if (plugin.getConfigManager().isLinked()) {
+        if (runtime.getConfigManager().isLinked()) {
             ctx.sendMessage(Message.raw("Status: LINKED"));
-            ctx.sendMessage(Message.raw("Server ID: " + plugin.getConfigManager().getServerId()));
+            ctx.sendMessage(Message.raw("Server ID: " + runtime.getConfigManager().getServerId()));
             ctx.sendMessage(Message.raw("Heartbeat: " +
-                    (plugin.getHeartbeatService().isRunning() ? "RUNNING" : "STOPPED")));
+                    (runtime.getHeartbeatService().isRunning() ? "RUNNING" : "STOPPED")));
+            Long lastSuccess = runtime.getConfigManager().getLastHeartbeatSuccessAt();
+            ctx.sendMessage(Message.raw("Last heartbeat: " + (lastSuccess == null ? "never"
+                    : ((System.currentTimeMillis() - lastSuccess) / 1000) + "s ago")));
+            ctx.sendMessage(Message.raw("Compression saved: " +
+                    (runtime.getHeartbeatService().getApi().getBytesSaved() / 1024) + " KB"));
         } else {
-            ctx.sendMessage(Message.raw("Status: NOT LINKED"));
-            ctx.sendMessage(Message.raw("Use /talename link --code=<code>"));
+            LinkService.State state = runtime.getLinkService().getState();
+            if (state == LinkService.State.IDLE) {
+                ctx.sendMessage(Message.raw("Status: NOT LINKED"));
+                ctx.sendMessage(Message.raw("Use /talename link --code=<code>"));
+            } else {
+                ctx.sendMessage(Message.raw("Status: " + state + " (attempt " + runtime.getLinkService().getAttempt() + ")"));
+            }
         }
     }
 
     private void handleHeartbeat(CommandContext ctx) {
         // /talename heartbeat
-        if (!plugin.getConfigManager().isLinked()) {
+        if (!runtime.getConfigManager().isLinked()) {
             ctx.sendMessage(Message.raw("Server not linked!"));
             return;
         }
 
-        plugin.getHeartbeatService().sendHeartbeatNow();
-        ctx.sendMessage(Message.raw("Heartbeat sent!"));
+        runtime.getHeartbeatService().sendHeartbeatNow();
+        ctx.sendMessage(Message.raw("Heartbeat requested!"));
+    }
+
+    private void handleMetrics(CommandContext ctx) {
+        // /talename metrics
+        ctx.sendMessage(Message.raw("=== TaleName Metrics ==="));
+        for (String line : runtime.getMetrics().summaryLines()) {
+            ctx.sendMessage(Message.raw(line));
+        }
+    }
+
+    private void handleWorlds(CommandContext ctx) {
+        // /talename worlds
+        ctx.sendMessage(Message.raw("=== TaleName Worlds ==="));
+        for (TaleNameAPI.WorldCount world : runtime.getWorldPopulation().snapshot()) {
+            ctx.sendMessage(Message.raw(world.world() + ": " + world.players()));
+        }
+        // Check the event-driven counters against a full scan.
+        List<String> mismatches = runtime.getWorldPopulation().verify(plugin.scanWorlds());
+        if (mismatches.isEmpty()) {
+            ctx.sendMessage(Message.raw("Counters match a full scan"));
+        } else {
+            for (String mismatch : mismatches) {
+                ctx.sendMessage(Message.raw("Mismatch: " + mismatch));
+            }
+        }
     }
 }
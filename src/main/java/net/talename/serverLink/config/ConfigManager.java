@@ -2,104 +2,718 @@ package net.talename.serverLink.config;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import net.talename.serverLink.Main;
-
-import java.io.*;
+import com.google.gson.JsonParseException;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
 
+/**
+ * Owns {@code serverlink.json}. The loaded config is an immutable {@link ServerLinkConfig} snapshot behind a
+ * volatile reference: changes build a copy and swap it in, so any thread sees one consistent version.
+ */
 public class ConfigManager {
 
-    private final Main plugin;
+    private static final long SAVE_COALESCE_MILLIS = 250;
+    private static final long SHUTDOWN_FLUSH_MILLIS = 5000;
+
+    private final Path dataDirectory;
+    private final Logger logger;
     private final Gson gson;
+    private final Gson stateGson;
     private final Path configPath;
-    private ServerLinkConfig config;
+    private final Path statePath;
+    private final ConfigWriter writer;
+    private final List<Consumer<ConfigChange>> listeners = new CopyOnWriteArrayList<>();
+    private volatile ServerLinkConfig config;
+    private volatile String lastWrittenJson;
+    private LinkState state = new LinkState();
 
-    public ConfigManager(Main plugin) {
-        this.plugin = plugin;
+    public ConfigManager(Path dataDirectory, Logger logger) {
+        this(dataDirectory, logger, new ConfigWriter(logger, SAVE_COALESCE_MILLIS));
+    }
+
+    /**
+     * Coalesces saves on {@code scheduler} and writes them on {@code io}; the caller owns both and must keep them
+     * running until {@link #close()}.
+     */
+    public ConfigManager(Path dataDirectory, Logger logger, ScheduledExecutorService scheduler, ExecutorService io) {
+        this(dataDirectory, logger, new ConfigWriter(logger, SAVE_COALESCE_MILLIS, scheduler, io));
+    }
+
+    private ConfigManager(Path dataDirectory, Logger logger, ConfigWriter writer) {
+        this.dataDirectory = dataDirectory;
+        this.logger = logger;
         this.gson = new GsonBuilder().setPrettyPrinting().create();
-        this.configPath = plugin.getDataDirectory().resolve("serverlink.json");
+        this.stateGson = new Gson();
+        this.configPath = dataDirectory.resolve("serverlink.json");
+        this.statePath = dataDirectory.resolve("serverlink-state.json");
+        this.writer = writer;
     }
 
     public void loadConfig() {
+        ConfigFile loaded = null;
         try {
-            Files.createDirectories(plugin.getDataDirectory());
+            Files.createDirectories(dataDirectory);
 
             if (Files.exists(configPath)) {
-                String json = Files.readString(configPath);
-                config = gson.fromJson(json, ServerLinkConfig.class);
+                loaded = gson.fromJson(Files.readString(configPath), ConfigFile.class);
             } else {
-                config = new ServerLinkConfig();
+                config = ServerLinkConfig.defaults();
                 saveConfig();
             }
-        } catch (IOException e) {
-            plugin.getPluginLogger().warning("Failed to load config: " + e.getMessage());
-            config = new ServerLinkConfig();
+        } catch (IOException | JsonParseException e) {
+            logger.warning("Failed to load config: " + e.getMessage());
+        }
+        if (loaded != null) {
+            // Nothing to fall back to yet, so invalid values are brought into range rather than rejected.
+            for (String problem : loaded.normalize()) {
+                logger.warning("Invalid config value (" + problem + "), using the nearest valid value");
+            }
+            config = new ServerLinkConfig(loaded);
+        } else if (config == null) {
+            config = ServerLinkConfig.defaults();
         }
+        loadState();
     }
 
-    public void saveConfig() {
+    /**
+     * Re-reads {@code serverlink.json} after an external edit. The file is checked with the same rules as on
+     * startup, but here an invalid file is rejected and the current snapshot stays in effect.
+     *
+     * @return true if a new snapshot was applied
+     */
+    public boolean reloadConfig() {
+        String json;
         try {
-            Files.createDirectories(configPath.getParent());
-            Files.writeString(configPath, gson.toJson(config));
+            json = Files.readString(configPath);
         } catch (IOException e) {
-            plugin.getPluginLogger().warning("Failed to save config: " + e.getMessage());
+            logger.warning("Failed to read config: " + e.getMessage());
+            return false;
+        }
+        if (json.equals(lastWrittenJson)) {
+            // Our own save coming back through the watcher.
+            return false;
+        }
+
+        ConfigFile file;
+        try {
+            file = gson.fromJson(json, ConfigFile.class);
+        } catch (JsonParseException e) {
+            logger.warning("Ignoring config edit, not valid JSON: " + e.getMessage());
+            return false;
         }
+        if (file == null) {
+            return false;
+        }
+        List<String> problems = file.normalize();
+        if (!problems.isEmpty()) {
+            logger.warning("Ignoring config edit: " + String.join("; ", problems));
+            return false;
+        }
+
+        ServerLinkConfig previous;
+        ServerLinkConfig loaded;
+        boolean unsaved;
+        synchronized (this) {
+            previous = config;
+            unsaved = writer.isPending(configPath);
+            if (unsaved) {
+                // The file predates link data we have not written yet; keep ours, and save the merged result.
+                file.serverToken = previous.serverToken;
+                file.serverId = previous.serverId;
+                file.linkedAt = previous.linkedAt;
+            }
+            loaded = new ServerLinkConfig(file);
+            config = loaded;
+            lastWrittenJson = json;
+        }
+        if (unsaved) {
+            saveConfig();
+        }
+        logger.info("Reloaded serverlink.json");
+        ConfigChange change = new ConfigChange(previous, loaded);
+        for (Consumer<ConfigChange> listener : listeners) {
+            try {
+                listener.accept(change);
+            } catch (RuntimeException e) {
+                logger.warning("Config reload listener failed: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /** Called with the old and new snapshot after a live reload. */
+    public void addReloadListener(Consumer<ConfigChange> listener) {
+        listeners.add(listener);
+    }
+
+    public Path getConfigPath() {
+        return configPath;
+    }
+
+    /** The current config; the setters here publish a new snapshot rather than changing this one. */
+    public ServerLinkConfig snapshot() {
+        return config;
+    }
+
+    private void loadState() {
+        try {
+            if (Files.exists(statePath)) {
+                LinkState loaded = stateGson.fromJson(Files.readString(statePath), LinkState.class);
+                if (loaded != null) state = loaded;
+            }
+        } catch (IOException | RuntimeException e) {
+            // Only bookkeeping; losing it is harmless.
+            logger.warning("Failed to load link state: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Queues a save of {@code serverlink.json}; the write happens off-thread and bursts are merged. Never call
+     * this holding the lock on this manager: once the writer's executors are gone it writes inline, rendering
+     * under its own lock and then ours.
+     */
+    public void saveConfig() {
+        writer.submit(configPath, this::renderConfig);
+    }
+
+    private synchronized String renderConfig() {
+        String json = gson.toJson(config);
+        lastWrittenJson = json;
+        return json;
+    }
+
+    private synchronized String renderState() {
+        return stateGson.toJson(state);
+    }
+
+    /** Waits up to {@code timeoutMillis} for queued saves to reach disk. */
+    public boolean flush(long timeoutMillis) {
+        return writer.flush(timeoutMillis);
+    }
+
+    /** Saves the config, flushes everything queued with a bounded wait, and stops the writer. */
+    public void close() {
+        saveConfig();
+        writer.close(SHUTDOWN_FLUSH_MILLIS);
     }
 
     public boolean isLinked() {
-        return config != null && 
-               config.serverToken != null && 
-               !config.serverToken.isEmpty() &&
-               config.serverId != null;
+        ServerLinkConfig c = config;
+        return c != null &&
+               c.serverToken != null &&
+               !c.serverToken.isEmpty() &&
+               c.serverId != null;
     }
 
     public void setLinkData(String serverToken, Long serverId) {
-        config.serverToken = serverToken;
-        config.serverId = serverId;
-        config.linkedAt = System.currentTimeMillis();
+        synchronized (this) {
+            ConfigFile next = ConfigFile.of(config);
+            next.serverToken = serverToken;
+            next.serverId = serverId;
+            next.linkedAt = System.currentTimeMillis();
+            config = new ServerLinkConfig(next);
+        }
         saveConfig();
     }
 
     public void clearLinkData() {
-        config.serverToken = null;
-        config.serverId = null;
-        config.linkedAt = null;
+        synchronized (this) {
+            ConfigFile next = ConfigFile.of(config);
+            next.serverToken = null;
+            next.serverId = null;
+            next.linkedAt = null;
+            config = new ServerLinkConfig(next);
+        }
         saveConfig();
     }
 
+    /**
+     * Records a delivered heartbeat in {@code serverlink-state.json}, so frequently changing bookkeeping
+     * never rewrites the hand-edited config.
+     */
+    public void recordHeartbeatSuccess() {
+        synchronized (this) {
+            state.lastHeartbeatSuccessAt = System.currentTimeMillis();
+        }
+        writer.submit(statePath, this::renderState);
+    }
+
+    public void recordHeartbeatFailure() {
+        synchronized (this) {
+            state.lastHeartbeatFailureAt = System.currentTimeMillis();
+        }
+        writer.submit(statePath, this::renderState);
+    }
+
+    public synchronized Long getLastHeartbeatSuccessAt() {
+        return state.lastHeartbeatSuccessAt;
+    }
+
     public String getServerToken() {
-        return config != null ? config.serverToken : null;
+        ServerLinkConfig c = config;
+        return c != null ? c.serverToken : null;
     }
 
     public Long getServerId() {
-        return config != null ? config.serverId : null;
+        ServerLinkConfig c = config;
+        return c != null ? c.serverId : null;
     }
 
     public boolean isDevMode() {
-        return config != null && config.devMode;
+        ServerLinkConfig c = config;
+        return c != null && c.devMode;
     }
 
     public String getApiBaseUrl() {
-        if (config == null) {
+        ServerLinkConfig c = config;
+        if (c == null) {
             return ServerLinkConfig.PROD_API_URL;
         }
-        return config.devMode ? ServerLinkConfig.DEV_API_URL : ServerLinkConfig.PROD_API_URL;
+        if (c.apiUrl != null && !c.apiUrl.isBlank()) {
+            return c.apiUrl.endsWith("/") ? c.apiUrl.substring(0, c.apiUrl.length() - 1) : c.apiUrl;
+        }
+        return c.devMode ? ServerLinkConfig.DEV_API_URL : ServerLinkConfig.PROD_API_URL;
+    }
+
+    /**
+     * Every API endpoint requests may be routed to, in order of preference: {@code apiUrls} when set,
+     * otherwise just {@link #getApiBaseUrl()}.
+     */
+    public List<String> getApiBaseUrls() {
+        ServerLinkConfig c = config;
+        if (c == null || c.apiUrls == null || c.apiUrls.isEmpty()) {
+            return List.of(getApiBaseUrl());
+        }
+        List<String> urls = new ArrayList<>(c.apiUrls.size());
+        for (String url : c.apiUrls) {
+            String trimmed = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+            if (!urls.contains(trimmed)) urls.add(trimmed);
+        }
+        return urls;
+    }
+
+    public boolean isWorldCountsEnabled() {
+        ServerLinkConfig c = config;
+        return c == null || c.worldCounts;
+    }
+
+    public boolean isStatusEndpointEnabled() {
+        ServerLinkConfig c = config;
+        return c != null && c.statusEndpoint;
+    }
+
+    public int getStatusPort() {
+        ServerLinkConfig c = config;
+        return c != null ? c.statusPort : ServerLinkConfig.DEFAULT_STATUS_PORT;
+    }
+
+    public String getStatusBindAddress() {
+        ServerLinkConfig c = config;
+        return c != null && c.statusBindAddress != null ? c.statusBindAddress : ServerLinkConfig.DEFAULT_STATUS_BIND_ADDRESS;
+    }
+
+    public int getEndpointProbeIntervalSeconds() {
+        ServerLinkConfig c = config;
+        int interval = c != null ? c.endpointProbeIntervalSeconds : ServerLinkConfig.DEFAULT_ENDPOINT_PROBE_INTERVAL;
+        return Math.max(5, interval);
+    }
+
+    /** @return how long a link request waits before also trying the next endpoint; 0 disables hedging */
+    public long getLinkHedgeDelayMillis() {
+        ServerLinkConfig c = config;
+        return c != null ? Math.max(0, c.linkHedgeDelayMillis) : ServerLinkConfig.DEFAULT_LINK_HEDGE_DELAY;
+    }
+
+    public boolean isDeltaHeartbeatsEnabled() {
+        ServerLinkConfig c = config;
+        return c == null || c.deltaHeartbeats;
+    }
+
+    public boolean isBinaryHeartbeatsEnabled() {
+        ServerLinkConfig c = config;
+        return c == null || c.binaryHeartbeats;
+    }
+
+    public boolean isCompressionEnabled() {
+        ServerLinkConfig c = config;
+        return c == null || c.compressHeartbeats;
+    }
+
+    public int getCompressionThresholdBytes() {
+        ServerLinkConfig c = config;
+        return c != null ? c.compressionThresholdBytes : ServerLinkConfig.DEFAULT_COMPRESSION_THRESHOLD;
+    }
+
+    public boolean isAggregator() {
+        ServerLinkConfig c = config;
+        return c != null && ServerLinkConfig.MODE_AGGREGATOR.equalsIgnoreCase(c.networkMode);
+    }
+
+    public boolean isAggregatorMember() {
+        ServerLinkConfig c = config;
+        return c != null && ServerLinkConfig.MODE_MEMBER.equalsIgnoreCase(c.networkMode);
+    }
+
+    public int getAggregatorPort() {
+        ServerLinkConfig c = config;
+        return c != null ? c.aggregatorPort : ServerLinkConfig.DEFAULT_AGGREGATOR_PORT;
+    }
+
+    public boolean isSpoolEnabled() {
+        ServerLinkConfig c = config;
+        return c == null || c.spoolEnabled;
+    }
+
+    public int getSpoolSizeBytes() {
+        ServerLinkConfig c = config;
+        return (c != null ? c.spoolSizeKb : ServerLinkConfig.DEFAULT_SPOOL_SIZE_KB) * 1024;
+    }
+
+    public int getSpoolReplayBatchSize() {
+        ServerLinkConfig c = config;
+        return c != null ? c.spoolReplayBatchSize : ServerLinkConfig.DEFAULT_SPOOL_REPLAY_BATCH;
+    }
+
+    public int getSpoolReplayIntervalSeconds() {
+        ServerLinkConfig c = config;
+        return c != null ? c.spoolReplayIntervalSeconds : ServerLinkConfig.DEFAULT_SPOOL_REPLAY_INTERVAL;
+    }
+
+    public boolean isMetricsFileEnabled() {
+        ServerLinkConfig c = config;
+        return c == null || c.metricsFile;
+    }
+
+    public int getMetricsIntervalSeconds() {
+        ServerLinkConfig c = config;
+        int interval = c != null ? c.metricsIntervalSeconds : ServerLinkConfig.DEFAULT_METRICS_INTERVAL;
+        return Math.max(1, interval);
+    }
+
+    public boolean isHealthTelemetryEnabled() {
+        ServerLinkConfig c = config;
+        return c == null || c.healthTelemetry;
+    }
+
+    public long getHealthSampleIntervalMillis() {
+        ServerLinkConfig c = config;
+        int interval = c != null ? c.healthSampleIntervalMillis : ServerLinkConfig.DEFAULT_HEALTH_SAMPLE_INTERVAL;
+        return Math.max(ServerLinkConfig.MIN_HEALTH_SAMPLE_INTERVAL, interval);
+    }
+
+    public boolean isPresenceChannelEnabled() {
+        ServerLinkConfig c = config;
+        return c != null && c.presenceChannel;
+    }
+
+    public int getPresenceKeepaliveSeconds() {
+        ServerLinkConfig c = config;
+        int keepalive = c != null ? c.presenceKeepaliveSeconds : ServerLinkConfig.DEFAULT_PRESENCE_KEEPALIVE;
+        return Math.max(5, keepalive);
+    }
+
+    public boolean isUniqueSketchesEnabled() {
+        ServerLinkConfig c = config;
+        return c == null || c.uniqueSketches;
+    }
+
+    /** @return the most players listed by UUID in a heartbeat, or 0 for no limit */
+    public int getPlayerListCap() {
+        ServerLinkConfig c = config;
+        return c != null ? Math.max(0, c.playerListCap) : ServerLinkConfig.DEFAULT_PLAYER_LIST_CAP;
+    }
+
+    /** Whether a list over the cap is cut to the cap rather than left out. */
+    public boolean isPlayerListTruncated() {
+        ServerLinkConfig c = config;
+        return c != null && ServerLinkConfig.OVERFLOW_TRUNCATE.equalsIgnoreCase(c.playerListOverflow);
     }
 
     public int getHeartbeatInterval() {
-        return config != null ? config.heartbeatIntervalSeconds : ServerLinkConfig.DEFAULT_HEARTBEAT_INTERVAL;
+        ServerLinkConfig c = config;
+        return c != null ? Math.max(1, c.heartbeatIntervalSeconds) : ServerLinkConfig.DEFAULT_HEARTBEAT_INTERVAL;
+    }
+
+    public int getMinHeartbeatInterval() {
+        ServerLinkConfig c = config;
+        int min = c != null ? c.minHeartbeatIntervalSeconds : ServerLinkConfig.DEFAULT_MIN_HEARTBEAT_INTERVAL;
+        return Math.max(1, Math.min(min, getHeartbeatInterval()));
     }
 
-    public static class ServerLinkConfig {
+    public int getMaxHeartbeatInterval() {
+        ServerLinkConfig c = config;
+        int max = c != null ? c.maxHeartbeatIntervalSeconds : ServerLinkConfig.DEFAULT_MAX_HEARTBEAT_INTERVAL;
+        return Math.max(max, getHeartbeatInterval());
+    }
+
+    /**
+     * One immutable version of the config. Built from a {@link ConfigFile} after {@link ConfigFile#normalize()},
+     * so every value is in range; readers may hold on to it freely.
+     */
+    public static final class ServerLinkConfig {
         public static final String PROD_API_URL = "https://api.talename.net";
         public static final String DEV_API_URL = "https://api.talename.local";
         public static final int DEFAULT_HEARTBEAT_INTERVAL = 300;
+        public static final int DEFAULT_MIN_HEARTBEAT_INTERVAL = 60;
+        public static final int DEFAULT_MAX_HEARTBEAT_INTERVAL = 900;
+        public static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+        public static final String MODE_STANDALONE = "standalone";
+        public static final String MODE_AGGREGATOR = "aggregator";
+        public static final String MODE_MEMBER = "member";
+        public static final int DEFAULT_AGGREGATOR_PORT = 47810;
+        public static final int DEFAULT_SPOOL_SIZE_KB = 4096;
+        public static final int DEFAULT_SPOOL_REPLAY_BATCH = 50;
+        public static final int DEFAULT_SPOOL_REPLAY_INTERVAL = 10;
+        public static final int DEFAULT_METRICS_INTERVAL = 60;
+        public static final int DEFAULT_HEALTH_SAMPLE_INTERVAL = 1000;
+        public static final int MIN_HEALTH_SAMPLE_INTERVAL = 100;
+        public static final int DEFAULT_PRESENCE_KEEPALIVE = 30;
+        public static final int DEFAULT_PLAYER_LIST_CAP = 1000;
+        public static final int DEFAULT_ENDPOINT_PROBE_INTERVAL = 30;
+        public static final int DEFAULT_LINK_HEDGE_DELAY = 2000;
+        public static final int DEFAULT_STATUS_PORT = 47811;
+        public static final String DEFAULT_STATUS_BIND_ADDRESS = "127.0.0.1";
+        public static final String OVERFLOW_OMIT = "omit";
+        public static final String OVERFLOW_TRUNCATE = "truncate";
+
+        public final String serverToken;
+        public final Long serverId;
+        public final Long linkedAt;
+        public final boolean devMode;
+        // Overrides the production/dev URL, e.g. to point at a staging or local stand-in API.
+        public final String apiUrl;
+        // Several endpoints to route between; takes precedence over apiUrl.
+        public final List<String> apiUrls;
+        public final int heartbeatIntervalSeconds;
+        public final int minHeartbeatIntervalSeconds;
+        public final int maxHeartbeatIntervalSeconds;
+        public final boolean deltaHeartbeats;
+        public final boolean binaryHeartbeats;
+        public final boolean compressHeartbeats;
+        public final int compressionThresholdBytes;
+        public final String networkMode;
+        public final int aggregatorPort;
+        public final boolean spoolEnabled;
+        public final int spoolSizeKb;
+        public final int spoolReplayBatchSize;
+        public final int spoolReplayIntervalSeconds;
+        public final boolean metricsFile;
+        public final int metricsIntervalSeconds;
+        public final boolean healthTelemetry;
+        public final int healthSampleIntervalMillis;
+        public final boolean presenceChannel;
+        public final int presenceKeepaliveSeconds;
+        public final boolean uniqueSketches;
+        public final int playerListCap;
+        public final String playerListOverflow;
+        public final int endpointProbeIntervalSeconds;
+        public final int linkHedgeDelayMillis;
+        public final boolean worldCounts;
+        public final boolean statusEndpoint;
+        public final int statusPort;
+        public final String statusBindAddress;
+
+        private ServerLinkConfig(ConfigFile f) {
+            serverToken = f.serverToken;
+            serverId = f.serverId;
+            linkedAt = f.linkedAt;
+            devMode = f.devMode;
+            apiUrl = f.apiUrl;
+            apiUrls = f.apiUrls != null ? List.copyOf(f.apiUrls) : null;
+            heartbeatIntervalSeconds = f.heartbeatIntervalSeconds;
+            minHeartbeatIntervalSeconds = f.minHeartbeatIntervalSeconds;
+            maxHeartbeatIntervalSeconds = f.maxHeartbeatIntervalSeconds;
+            deltaHeartbeats = f.deltaHeartbeats;
+            binaryHeartbeats = f.binaryHeartbeats;
+            compressHeartbeats = f.compressHeartbeats;
+            compressionThresholdBytes = f.compressionThresholdBytes;
+            networkMode = f.networkMode;
+            aggregatorPort = f.aggregatorPort;
+            spoolEnabled = f.spoolEnabled;
+            spoolSizeKb = f.spoolSizeKb;
+            spoolReplayBatchSize = f.spoolReplayBatchSize;
+            spoolReplayIntervalSeconds = f.spoolReplayIntervalSeconds;
+            metricsFile = f.metricsFile;
+            metricsIntervalSeconds = f.metricsIntervalSeconds;
+            healthTelemetry = f.healthTelemetry;
+            healthSampleIntervalMillis = f.healthSampleIntervalMillis;
+            presenceChannel = f.presenceChannel;
+            presenceKeepaliveSeconds = f.presenceKeepaliveSeconds;
+            uniqueSketches = f.uniqueSketches;
+            playerListCap = f.playerListCap;
+            playerListOverflow = f.playerListOverflow;
+            endpointProbeIntervalSeconds = f.endpointProbeIntervalSeconds;
+            linkHedgeDelayMillis = f.linkHedgeDelayMillis;
+            worldCounts = f.worldCounts;
+            statusEndpoint = f.statusEndpoint;
+            statusPort = f.statusPort;
+            statusBindAddress = f.statusBindAddress;
+        }
+
+        static ServerLinkConfig defaults() {
+            return new ServerLinkConfig(new ConfigFile());
+        }
+    }
+
+    /** {@code serverlink.json} as parsed; mutable, and never shared beyond building a {@link ServerLinkConfig}. */
+    static final class ConfigFile {
+        String serverToken;
+        Long serverId;
+        Long linkedAt;
+        boolean devMode = false;
+        String apiUrl;
+        List<String> apiUrls;
+        int heartbeatIntervalSeconds = ServerLinkConfig.DEFAULT_HEARTBEAT_INTERVAL;
+        int minHeartbeatIntervalSeconds = ServerLinkConfig.DEFAULT_MIN_HEARTBEAT_INTERVAL;
+        int maxHeartbeatIntervalSeconds = ServerLinkConfig.DEFAULT_MAX_HEARTBEAT_INTERVAL;
+        boolean deltaHeartbeats = true;
+        boolean binaryHeartbeats = true;
+        boolean compressHeartbeats = true;
+        int compressionThresholdBytes = ServerLinkConfig.DEFAULT_COMPRESSION_THRESHOLD;
+        String networkMode = ServerLinkConfig.MODE_STANDALONE;
+        int aggregatorPort = ServerLinkConfig.DEFAULT_AGGREGATOR_PORT;
+        boolean spoolEnabled = true;
+        int spoolSizeKb = ServerLinkConfig.DEFAULT_SPOOL_SIZE_KB;
+        int spoolReplayBatchSize = ServerLinkConfig.DEFAULT_SPOOL_REPLAY_BATCH;
+        int spoolReplayIntervalSeconds = ServerLinkConfig.DEFAULT_SPOOL_REPLAY_INTERVAL;
+        boolean metricsFile = true;
+        int metricsIntervalSeconds = ServerLinkConfig.DEFAULT_METRICS_INTERVAL;
+        boolean healthTelemetry = true;
+        int healthSampleIntervalMillis = ServerLinkConfig.DEFAULT_HEALTH_SAMPLE_INTERVAL;
+        boolean presenceChannel = false;
+        int presenceKeepaliveSeconds = ServerLinkConfig.DEFAULT_PRESENCE_KEEPALIVE;
+        boolean uniqueSketches = true;
+        int playerListCap = ServerLinkConfig.DEFAULT_PLAYER_LIST_CAP;
+        String playerListOverflow = ServerLinkConfig.OVERFLOW_OMIT;
+        int endpointProbeIntervalSeconds = ServerLinkConfig.DEFAULT_ENDPOINT_PROBE_INTERVAL;
+        int linkHedgeDelayMillis = ServerLinkConfig.DEFAULT_LINK_HEDGE_DELAY;
+        boolean worldCounts = true;
+        boolean statusEndpoint = false;
+        int statusPort = ServerLinkConfig.DEFAULT_STATUS_PORT;
+        String statusBindAddress = ServerLinkConfig.DEFAULT_STATUS_BIND_ADDRESS;
+
+        static ConfigFile of(ServerLinkConfig c) {
+            ConfigFile f = new ConfigFile();
+            f.serverToken = c.serverToken;
+            f.serverId = c.serverId;
+            f.linkedAt = c.linkedAt;
+            f.devMode = c.devMode;
+            f.apiUrl = c.apiUrl;
+            f.apiUrls = c.apiUrls != null ? new ArrayList<>(c.apiUrls) : null;
+            f.heartbeatIntervalSeconds = c.heartbeatIntervalSeconds;
+            f.minHeartbeatIntervalSeconds = c.minHeartbeatIntervalSeconds;
+            f.maxHeartbeatIntervalSeconds = c.maxHeartbeatIntervalSeconds;
+            f.deltaHeartbeats = c.deltaHeartbeats;
+            f.binaryHeartbeats = c.binaryHeartbeats;
+            f.compressHeartbeats = c.compressHeartbeats;
+            f.compressionThresholdBytes = c.compressionThresholdBytes;
+            f.networkMode = c.networkMode;
+            f.aggregatorPort = c.aggregatorPort;
+            f.spoolEnabled = c.spoolEnabled;
+            f.spoolSizeKb = c.spoolSizeKb;
+            f.spoolReplayBatchSize = c.spoolReplayBatchSize;
+            f.spoolReplayIntervalSeconds = c.spoolReplayIntervalSeconds;
+            f.metricsFile = c.metricsFile;
+            f.metricsIntervalSeconds = c.metricsIntervalSeconds;
+            f.healthTelemetry = c.healthTelemetry;
+            f.healthSampleIntervalMillis = c.healthSampleIntervalMillis;
+            f.presenceChannel = c.presenceChannel;
+            f.presenceKeepaliveSeconds = c.presenceKeepaliveSeconds;
+            f.uniqueSketches = c.uniqueSketches;
+            f.playerListCap = c.playerListCap;
+            f.playerListOverflow = c.playerListOverflow;
+            f.endpointProbeIntervalSeconds = c.endpointProbeIntervalSeconds;
+            f.linkHedgeDelayMillis = c.linkHedgeDelayMillis;
+            f.worldCounts = c.worldCounts;
+            f.statusEndpoint = c.statusEndpoint;
+            f.statusPort = c.statusPort;
+            f.statusBindAddress = c.statusBindAddress;
+            return f;
+        }
+
+        /**
+         * Brings every value into range: numbers are clamped to their bounds, anything else invalid falls back
+         * to its default. The same rules apply on startup and on reload.
+         *
+         * @return one line per value that had to change, empty if the file was valid
+         */
+        List<String> normalize() {
+            List<String> problems = new ArrayList<>();
+            if (apiUrl != null && !apiUrl.isBlank() && !isHttpUrl(apiUrl)) {
+                problems.add("apiUrl must start with http:// or https://");
+                apiUrl = null;
+            }
+            if (apiUrls != null && !apiUrls.stream().allMatch(ConfigFile::isHttpUrl)) {
+                problems.add("apiUrls entries must start with http:// or https://");
+                apiUrls = apiUrls.stream().filter(ConfigFile::isHttpUrl).toList();
+            }
+            endpointProbeIntervalSeconds = atLeast(problems, "endpointProbeIntervalSeconds", endpointProbeIntervalSeconds, 5);
+            linkHedgeDelayMillis = atLeast(problems, "linkHedgeDelayMillis", linkHedgeDelayMillis, 0);
+            if (statusPort < 1 || statusPort > 65535) {
+                problems.add("statusPort must be 1-65535");
+                statusPort = ServerLinkConfig.DEFAULT_STATUS_PORT;
+            }
+            if (statusBindAddress == null || statusBindAddress.isBlank()) {
+                problems.add("statusBindAddress must be set");
+                statusBindAddress = ServerLinkConfig.DEFAULT_STATUS_BIND_ADDRESS;
+            }
+            heartbeatIntervalSeconds = atLeast(problems, "heartbeatIntervalSeconds", heartbeatIntervalSeconds, 1);
+            minHeartbeatIntervalSeconds = atLeast(problems, "minHeartbeatIntervalSeconds", minHeartbeatIntervalSeconds, 1);
+            maxHeartbeatIntervalSeconds = atLeast(problems, "maxHeartbeatIntervalSeconds", maxHeartbeatIntervalSeconds, 1);
+            compressionThresholdBytes = atLeast(problems, "compressionThresholdBytes", compressionThresholdBytes, 0);
+            if (networkMode == null
+                    || !(ServerLinkConfig.MODE_STANDALONE.equalsIgnoreCase(networkMode)
+                    || ServerLinkConfig.MODE_AGGREGATOR.equalsIgnoreCase(networkMode)
+                    || ServerLinkConfig.MODE_MEMBER.equalsIgnoreCase(networkMode))) {
+                problems.add("networkMode must be standalone, aggregator or member");
+                networkMode = ServerLinkConfig.MODE_STANDALONE;
+            }
+            if (aggregatorPort < 1 || aggregatorPort > 65535) {
+                problems.add("aggregatorPort must be 1-65535");
+                aggregatorPort = ServerLinkConfig.DEFAULT_AGGREGATOR_PORT;
+            }
+            spoolSizeKb = atLeast(problems, "spoolSizeKb", spoolSizeKb, 4);
+            spoolReplayBatchSize = atLeast(problems, "spoolReplayBatchSize", spoolReplayBatchSize, 1);
+            spoolReplayIntervalSeconds = atLeast(problems, "spoolReplayIntervalSeconds", spoolReplayIntervalSeconds, 1);
+            metricsIntervalSeconds = atLeast(problems, "metricsIntervalSeconds", metricsIntervalSeconds, 1);
+            presenceKeepaliveSeconds = atLeast(problems, "presenceKeepaliveSeconds", presenceKeepaliveSeconds, 5);
+            playerListCap = atLeast(problems, "playerListCap", playerListCap, 0);
+            if (playerListOverflow == null
+                    || !(ServerLinkConfig.OVERFLOW_OMIT.equalsIgnoreCase(playerListOverflow)
+                    || ServerLinkConfig.OVERFLOW_TRUNCATE.equalsIgnoreCase(playerListOverflow))) {
+                problems.add("playerListOverflow must be omit or truncate");
+                playerListOverflow = ServerLinkConfig.OVERFLOW_OMIT;
+            }
+            healthSampleIntervalMillis = atLeast(problems, "healthSampleIntervalMillis", healthSampleIntervalMillis,
+                    ServerLinkConfig.MIN_HEALTH_SAMPLE_INTERVAL);
+            return problems;
+        }
+
+        private static int atLeast(List<String> problems, String key, int value, int min) {
+            if (value >= min) return value;
+            problems.add(key + " must be at least " + min);
+            return min;
+        }
+
+        private static boolean isHttpUrl(String url) {
+            return url != null && (url.startsWith("https://") || url.startsWith("http://"));
+        }
+    }
+
+    /** Before and after snapshots of a live reload. */
+    public record ConfigChange(ServerLinkConfig previous, ServerLinkConfig current) {}
 
-        public String serverToken;
-        public Long serverId;
-        public Long linkedAt;
-        public boolean devMode = false;
-        public int heartbeatIntervalSeconds = DEFAULT_HEARTBEAT_INTERVAL;
+    /** Runtime bookkeeping kept apart from the config. */
+    public static class LinkState {
+        public Long lastHeartbeatSuccessAt;
+        public Long lastHeartbeatFailureAt;
     }
 }
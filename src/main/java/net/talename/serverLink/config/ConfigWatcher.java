@@ -0,0 +1,93 @@
+package net.talename.serverLink.config;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Watches the plugin data folder and hands edits of {@code serverlink.json} to {@link ConfigManager#reloadConfig()}.
+ */
+public class ConfigWatcher {
+
+    // Editors often save in several steps; wait for the file to settle before reading it.
+    private static final long SETTLE_MILLIS = 200;
+
+    private final ConfigManager configManager;
+    private final Logger logger;
+    private final ExecutorService executor;
+    private WatchService watchService;
+    private Future<?> task;
+
+    /** @param executor runs the blocking watch loop; virtual threads suit it */
+    public ConfigWatcher(ConfigManager configManager, Logger logger, ExecutorService executor) {
+        this.configManager = configManager;
+        this.logger = logger;
+        this.executor = executor;
+    }
+
+    public synchronized void start() {
+        if (task != null) return;
+        Path configPath = configManager.getConfigPath();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            configPath.getParent().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warning("Config hot reload unavailable: " + e.getMessage());
+            return;
+        }
+
+        WatchService service = watchService;
+        Path fileName = configPath.getFileName();
+        task = executor.submit(() -> watch(service, fileName));
+    }
+
+    private void watch(WatchService service, Path fileName) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (fileName.equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (!changed) continue;
+
+                Thread.sleep(SETTLE_MILLIS);
+                // Drop events queued while settling; this read covers them.
+                WatchKey pending;
+                while ((pending = service.poll()) != null) {
+                    pending.pollEvents();
+                    pending.reset();
+                }
+                configManager.reloadConfig();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped.
+        }
+    }
+
+    public synchronized void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+            }
+            watchService = null;
+        }
+        if (task != null) {
+            task.cancel(true);
+            task = null;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package net.talename.serverLink.config;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Writes files off the caller's thread. Saves requested within {@code coalesceMillis} of each other collapse into
+ * one write per file, and every write goes to a temp file that is fsynced and renamed over the target, so a crash
+ * leaves either the old file or the new one.
+ */
+public class ConfigWriter {
+
+    private final Logger logger;
+    private final long coalesceMillis;
+    private final Map<Path, Supplier<String>> pending = new ConcurrentHashMap<>();
+    private final Set<Path> writing = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService io;
+    private final boolean ownsExecutor;
+
+    /** Writes on a thread of its own, for use outside the plugin. */
+    public ConfigWriter(Logger logger, long coalesceMillis) {
+        this(logger, coalesceMillis, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "TaleName-ConfigWriter");
+            t.setDaemon(true);
+            return t;
+        }));
+    }
+
+    private ConfigWriter(Logger logger, long coalesceMillis, ScheduledExecutorService executor) {
+        this(logger, coalesceMillis, executor, executor, true);
+    }
+
+    /**
+     * Waits out the coalescing delay on {@code scheduler} and writes on {@code io}, so the fsync never holds up
+     * other timers. Both belong to the caller.
+     */
+    public ConfigWriter(Logger logger, long coalesceMillis, ScheduledExecutorService scheduler, ExecutorService io) {
+        this(logger, coalesceMillis, scheduler, io, false);
+    }
+
+    private ConfigWriter(Logger logger, long coalesceMillis, ScheduledExecutorService scheduler, ExecutorService io,
+                         boolean ownsExecutor) {
+        this.logger = logger;
+        this.coalesceMillis = coalesceMillis;
+        this.scheduler = scheduler;
+        this.io = io;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /** Queues a write of {@code file}. The content is rendered when the write happens, so the latest state wins. */
+    public void submit(Path file, Supplier<String> content) {
+        pending.put(file, content);
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.schedule(this::startDrain, coalesceMillis, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                // Already closed: nothing will drain for us.
+                scheduled.set(false);
+                drain();
+            }
+        }
+    }
+
+    /** Whether a write of {@code file} is queued or under way, i.e. the file on disk may be behind. */
+    public boolean isPending(Path file) {
+        return pending.containsKey(file) || writing.contains(file);
+    }
+
+    /**
+     * Writes everything queued and waits up to {@code timeoutMillis} for it.
+     *
+     * @return false if the writes did not finish in time
+     */
+    public boolean flush(long timeoutMillis) {
+        try {
+            CompletableFuture.runAsync(this::drain, io).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /** Flushes with a bound, then stops the writer thread if it is ours. */
+    public void close(long timeoutMillis) {
+        if (!flush(timeoutMillis)) {
+            logger.warning("Config writes did not finish within " + timeoutMillis + "ms");
+        }
+        if (ownsExecutor) {
+            scheduler.shutdown();
+        }
+    }
+
+    private void startDrain() {
+        try {
+            io.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // io is shutting down ahead of the scheduler; a late write on the timer beats a lost one.
+            drain();
+        }
+    }
+
+    private synchronized void drain() {
+        scheduled.set(false);
+        for (Path file : pending.keySet()) {
+            // Marked before leaving pending, so isPending never misses a write in between.
+            writing.add(file);
+            try {
+                Supplier<String> content = pending.remove(file);
+                if (content == null) continue;
+                writeAtomically(file, content.get());
+            } catch (IOException | RuntimeException e) {
+                logger.warning("Failed to save " + file.getFileName() + ": " + e.getMessage());
+            } finally {
+                writing.remove(file);
+            }
+        }
+    }
+
+    public static void writeAtomically(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package net.talename.serverLink.service;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Member side of aggregator mode: hands a heartbeat body to the aggregator on this host.
+ */
+public class AggregatorClient {
+
+    public static final int UNREACHABLE = -1;
+
+    private final int port;
+
+    public AggregatorClient(int port) {
+        this.port = port;
+    }
+
+    /**
+     * @return one of the {@code AggregatorServer.ACK_*} codes, or {@link #UNREACHABLE}
+     */
+    public int submit(String serverToken, byte[] body) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1000);
+            socket.setSoTimeout(2000);
+
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(AggregatorServer.FRAME_MAGIC);
+            out.writeUTF(serverToken);
+            out.writeInt(body.length);
+            out.write(body);
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            int ack = in.read();
+            return ack < 0 ? UNREACHABLE : ack;
+        } catch (IOException e) {
+            return UNREACHABLE;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package net.talename.serverLink.service;
+
+import net.talename.serverLink.PluginContext;
+import net.talename.serverLink.api.TaleNameAPI;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loopback listener used in aggregator mode. Sibling instances on the same host hand their heartbeat bodies
+ * over here, and the aggregator forwards all of them in one batch request with its own heartbeat. A member is
+ * only told its heartbeat was queued while this instance is linked and heartbeating successfully; if a batch
+ * did not deliver a member's previous heartbeat, that member is told so and sends its next one itself.
+ */
+public class AggregatorServer {
+
+    static final int FRAME_MAGIC = 0x544E4147; // "TNAG"
+    static final int MAX_BODY_BYTES = 4 << 20;
+
+    public static final int ACK_QUEUED = 0;
+    public static final int ACK_TOKEN_REJECTED = 1;
+    public static final int ACK_SEND_DIRECT = 2;
+    public static final int ACK_UNDELIVERED = 3;
+
+    private final PluginContext plugin;
+    private final int port;
+    // Latest body per member token; a newer submission replaces one that has not been flushed yet.
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final Map<String, Integer> verdicts = new ConcurrentHashMap<>();
+    // Members whose last batched heartbeat did not reach the API.
+    private final Set<String> undelivered = ConcurrentHashMap.newKeySet();
+    private volatile boolean batchUnsupported = false;
+    private ServerSocket serverSocket;
+
+    public AggregatorServer(PluginContext plugin, int port) {
+        this.plugin = plugin;
+        this.port = port;
+    }
+
+    public void start() {
+        try {
+            serverSocket = new ServerSocket(port, 64, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            plugin.getPluginLogger().warning("Failed to start heartbeat aggregator on port " + port + ": " + e.getMessage());
+            return;
+        }
+        plugin.getPluginLogger().info("Heartbeat aggregator listening on 127.0.0.1:" + port);
+        // Closing the socket in stop() ends the loop.
+        plugin.getExecutors().io().execute(this::acceptLoop);
+    }
+
+    public void stop() {
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException ignored) {
+            }
+            serverSocket = null;
+        }
+    }
+
+    private void acceptLoop() {
+        ServerSocket socket = serverSocket;
+        while (socket != null && !socket.isClosed()) {
+            try {
+                Socket client = socket.accept();
+                plugin.getExecutors().io().execute(() -> handle(client));
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    plugin.getPluginLogger().warning("Aggregator accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handle(Socket client) {
+        try (client) {
+            client.setSoTimeout(2000);
+            DataInputStream in = new DataInputStream(client.getInputStream());
+            if (in.readInt() != FRAME_MAGIC) return;
+            String token = in.readUTF();
+            int length = in.readInt();
+            if (length <= 0 || length > MAX_BODY_BYTES) return;
+            byte[] body = in.readNBytes(length);
+            if (body.length != length) return;
+
+            int ack;
+            if (verdicts.getOrDefault(token, ACK_QUEUED) == ACK_TOKEN_REJECTED) {
+                verdicts.remove(token);
+                ack = ACK_TOKEN_REJECTED;
+            } else if (undelivered.remove(token) || isOverdue(pending.get(token))) {
+                ack = ACK_UNDELIVERED;
+            } else if (batchUnsupported || !forwarding()) {
+                ack = ACK_SEND_DIRECT;
+            } else {
+                pending.put(token, new Pending(body, System.nanoTime()));
+                ack = ACK_QUEUED;
+            }
+            if (ack != ACK_QUEUED) {
+                // The member's own send supersedes whatever is still queued for it.
+                pending.remove(token);
+            }
+            client.getOutputStream().write(ack);
+        } catch (IOException ignored) {
+            // Member falls back to a direct heartbeat when it gets no ack.
+        }
+    }
+
+    /** Only queue while our own heartbeats are going out and getting through; otherwise nothing would drain. */
+    private boolean forwarding() {
+        HeartbeatService heartbeats = plugin.getHeartbeatService();
+        return plugin.getConfigManager().isLinked() && heartbeats != null && heartbeats.isRunning()
+                && heartbeats.getConsecutiveFailures() == 0;
+    }
+
+    /** A queued body that outlived two of our longest heartbeat intervals means the batch loop is not draining. */
+    private boolean isOverdue(Pending queued) {
+        if (queued == null) return false;
+        long limit = TimeUnit.SECONDS.toNanos(2L * plugin.getConfigManager().getMaxHeartbeatInterval());
+        return System.nanoTime() - queued.queuedNanos() > limit;
+    }
+
+    /** Removes and returns everything submitted since the previous batch. */
+    public List<TaleNameAPI.BatchEntry> drain() {
+        List<TaleNameAPI.BatchEntry> entries = new ArrayList<>(pending.size());
+        for (String token : pending.keySet()) {
+            Pending queued = pending.remove(token);
+            if (queued != null) {
+                entries.add(new TaleNameAPI.BatchEntry(token, queued.body()));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Settles a drained batch. Bodies that did not reach the API go back in the queue unless the member has
+     * submitted a newer one meanwhile, and their members are told on their next submission.
+     *
+     * @param response the batch result, or null if the request failed or timed out
+     */
+    public void recordResults(List<TaleNameAPI.BatchEntry> sent, TaleNameAPI.BatchResponse response) {
+        if (response != null && !response.supported()) {
+            if (!batchUnsupported) {
+                plugin.getPluginLogger().warning("API has no batch heartbeat endpoint; members will send directly.");
+            }
+            batchUnsupported = true;
+            return;
+        }
+        int failed = 0;
+        for (int i = 0; i < sent.size(); i++) {
+            TaleNameAPI.BatchEntry entry = sent.get(i);
+            TaleNameAPI.HeartbeatResponse result = response == null ? null : response.members().get(i);
+            if (result != null && result.success()) {
+                undelivered.remove(entry.serverToken());
+            } else if (result != null && result.tokenRejected()) {
+                verdicts.put(entry.serverToken(), ACK_TOKEN_REJECTED);
+            } else {
+                pending.putIfAbsent(entry.serverToken(), new Pending(entry.body(), System.nanoTime()));
+                undelivered.add(entry.serverToken());
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            plugin.getPluginLogger().warning("Batch did not deliver " + failed + " member heartbeats; re-queued them");
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private record Pending(byte[] body, long queuedNanos) {}
+}
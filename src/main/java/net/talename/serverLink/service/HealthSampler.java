@@ -0,0 +1,153 @@
+package net.talename.serverLink.service;
+
+import net.talename.serverLink.PluginContext;
+import net.talename.serverLink.api.TaleNameAPI;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Samples server health between heartbeats and hands a {@link TaleNameAPI.HealthSummary} to each
+ * heartbeat. The plugin API exposes no tick timings, so tick health is measured as the delay before the default
+ * world's thread runs a no-op probe; at most one probe is outstanding, so a stalled world costs nothing extra.
+ * A probe the world has not run within five seconds counts as a lag sample of that long and is
+ * abandoned, so a stopped or unloaded world cannot end sampling.
+ */
+public class HealthSampler {
+
+    private static final long PROBE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final PluginContext plugin;
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final BufferPoolMXBean directPool;
+    private final AtomicReference<Probe> outstanding = new AtomicReference<>();
+    private final AtomicReference<LatencyHistogram> tickLag = new AtomicReference<>(new LatencyHistogram());
+    private final AtomicLong peakHeapUsed = new AtomicLong();
+    private final AtomicLong samples = new AtomicLong();
+    private final LatencyHistogram sampleCost = new LatencyHistogram();
+    private long lastGcMillis;
+    private long lastGcCount;
+    private ScheduledFuture<?> task;
+
+    public HealthSampler(PluginContext plugin) {
+        this.plugin = plugin;
+        this.directPool = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> "direct".equals(pool.getName()))
+                .findFirst()
+                .orElse(null);
+        this.lastGcMillis = gcMillis();
+        this.lastGcCount = gcCount();
+
+        plugin.getMetrics().registerGauge("talename_health_sample_max_micros",
+                "Longest time one health sample took on the sampler thread.", () -> sampleCost.maxNanos() / 1000);
+        plugin.getMetrics().registerGauge("talename_health_samples_total",
+                "Health samples taken since startup.", sampleCost::count);
+    }
+
+    /** Samples run on the shared plugin scheduler; each is a handful of MXBean reads and one queued probe. */
+    public synchronized void start(long intervalMillis) {
+        task = plugin.getExecutors().scheduler()
+                .scheduleAtFixedRate(this::sample, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void sample() {
+        long started = System.nanoTime();
+        try {
+            probeWorld(started);
+            long heapUsed = memory.getHeapMemoryUsage().getUsed();
+            peakHeapUsed.accumulateAndGet(heapUsed, Math::max);
+            samples.incrementAndGet();
+        } catch (RuntimeException e) {
+            plugin.getPluginLogger().warning("Health sample failed: " + e.getMessage());
+        } finally {
+            sampleCost.record(System.nanoTime() - started);
+        }
+    }
+
+    private void probeWorld(long submitted) {
+        Probe pending = outstanding.get();
+        if (pending != null) {
+            if (submitted - pending.submittedNanos() < PROBE_TIMEOUT_NANOS) return;
+            // Whichever of the timeout and a late run gets here first records the sample.
+            if (outstanding.compareAndSet(pending, null)) {
+                tickLag.get().record(submitted - pending.submittedNanos());
+            }
+        }
+
+        Executor world = plugin.getDefaultWorld();
+        Probe probe = new Probe(submitted);
+        if (world == null || !outstanding.compareAndSet(null, probe)) return;
+        try {
+            world.execute(() -> {
+                if (outstanding.compareAndSet(probe, null)) {
+                    tickLag.get().record(System.nanoTime() - submitted);
+                }
+            });
+        } catch (RuntimeException e) {
+            // The world refused the task, e.g. while shutting down.
+            outstanding.compareAndSet(probe, null);
+            throw e;
+        }
+    }
+
+    /** Summarises everything sampled since the previous call and starts a new window. */
+    public synchronized TaleNameAPI.HealthSummary drainSummary() {
+        LatencyHistogram lag = tickLag.getAndSet(new LatencyHistogram());
+        long gcMillis = gcMillis();
+        long gcCount = gcCount();
+        long gcPause = gcMillis - lastGcMillis;
+        long gcRuns = gcCount - lastGcCount;
+        lastGcMillis = gcMillis;
+        lastGcCount = gcCount;
+
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        long peak = Math.max(peakHeapUsed.getAndSet(0), heap.getUsed());
+        return new TaleNameAPI.HealthSummary(
+                (int) samples.getAndSet(0),
+                lag.percentileNanos(0.5) / 1000,
+                lag.percentileNanos(0.95) / 1000,
+                lag.percentileNanos(0.99) / 1000,
+                lag.maxNanos() / 1000,
+                peak,
+                heap.getMax(),
+                memory.getNonHeapMemoryUsage().getUsed(),
+                directPool != null ? directPool.getMemoryUsed() : -1,
+                Math.max(0, gcPause),
+                Math.max(0, gcRuns));
+    }
+
+    private long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : collectors) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : collectors) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    public synchronized void shutdown() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    private record Probe(long submittedNanos) {}
+}
@@ -0,0 +1,176 @@
+package net.talename.serverLink.service;
+
+import net.talename.serverLink.api.TaleNameAPI;
+import net.talename.serverLink.config.ConfigManager;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * The heartbeat loop's decisions: when the next heartbeat is due, whether it carries a delta, and how a response
+ * or a failure changes that. Holds no scheduler and no game-server state, so {@link HeartbeatService} and the load
+ * generator run the same logic. The caller sends one heartbeat at a time: {@link #begin}, then
+ * {@link #onResponse} if one arrived, then {@link #onFinished}.
+ */
+public class HeartbeatCycle {
+
+    private static final long MAX_DIRECTED_DELAY_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /** What a response means for the caller, beyond the pacing handled here. */
+    public enum Outcome { DELIVERED, TOKEN_REJECTED, RESYNC_REQUESTED, FAILED }
+
+    private final ConfigManager config;
+    private final HeartbeatPacer pacer;
+    private final Logger logger;
+    private final PresenceDeltaTracker deltaTracker = new PresenceDeltaTracker();
+    private volatile boolean manualRequested = false;
+    private volatile int consecutiveFailures = 0;
+    private volatile long lastSendNanos;
+    private volatile long backoffUntilNanos;
+    private volatile int quietStreak = 0;
+    private volatile double cycleJitter = 1.0;
+    private volatile long directedUntilNanos = 0;
+    private volatile TaleNameAPI.DetailLevel detailLevel = TaleNameAPI.DetailLevel.DELTA;
+
+    public HeartbeatCycle(ConfigManager config, Logger logger) {
+        this.config = config;
+        this.pacer = new HeartbeatPacer(config);
+        this.logger = logger;
+    }
+
+    public HeartbeatPacer pacer() {
+        return pacer;
+    }
+
+    /** Starts over, as after linking: the next heartbeat is a full snapshot, due at once. */
+    public void reset() {
+        consecutiveFailures = 0;
+        quietStreak = 0;
+        directedUntilNanos = 0;
+        detailLevel = TaleNameAPI.DetailLevel.DELTA;
+        deltaTracker.reset();
+        manualRequested = true;
+    }
+
+    /** Makes the next heartbeat due now, unless the API or a backoff says otherwise. */
+    public void requestNow() {
+        manualRequested = true;
+    }
+
+    /** Makes the next heartbeat a full snapshot. */
+    public void requestResync() {
+        deltaTracker.requestResync();
+    }
+
+    /**
+     * @param churn       joins plus leaves since the last heartbeat
+     * @param liveChannel whether joins and leaves are streamed separately, so heartbeats only confirm state
+     * @return milliseconds until the next heartbeat is due; zero or less means now
+     */
+    public long millisUntilDue(int churn, int online, boolean liveChannel) {
+        long now = System.nanoTime();
+        long directed = directedUntilNanos;
+        long directedMillis = directed == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(directed - now);
+        if (consecutiveFailures > 0) {
+            // A directive on a failed response (e.g. 429 Retry-After) can lengthen the backoff, never shorten it.
+            return Math.max(directedMillis, TimeUnit.NANOSECONDS.toMillis(backoffUntilNanos - now));
+        }
+        // Otherwise pacing requested by the API (load shedding, Retry-After) wins, manual triggers included.
+        if (directed != 0) {
+            return directedMillis;
+        }
+        if (manualRequested) {
+            return 0;
+        }
+        long interval = liveChannel
+                ? pacer.liveChannelIntervalMillis()
+                : pacer.targetIntervalMillis(churn, online, quietStreak);
+        long target = (long) (interval * cycleJitter);
+        return target - TimeUnit.NANOSECONDS.toMillis(now - lastSendNanos);
+    }
+
+    /**
+     * Starts a heartbeat and picks its presence: a delta when the API supports one, else the full set.
+     *
+     * @param overCap whether the player list is over the configured cap and will not be sent in full
+     */
+    public Send begin(Collection<UUID> online, boolean overCap) {
+        manualRequested = false;
+        // A directive covers one heartbeat; the response to this one sets the next, and a send that gets no
+        // response at all falls back to plain backoff.
+        directedUntilNanos = 0;
+        lastSendNanos = System.nanoTime();
+        boolean countOnly = detailLevel == TaleNameAPI.DetailLevel.COUNT;
+        // Deltas need a full list as their baseline, which is never sent above the cap.
+        boolean delta = config.isDeltaHeartbeatsEnabled() && detailLevel == TaleNameAPI.DetailLevel.DELTA && !overCap;
+        return new Send(deltaTracker.next(online, delta), countOnly, overCap);
+    }
+
+    public Outcome onResponse(Send send, TaleNameAPI.HeartbeatResponse response) {
+        applyDirectives(response);
+        if (response.success()) {
+            consecutiveFailures = 0;
+            if (send.countOnly() || send.overCap()) {
+                // The API never saw this whole player list, so it cannot become the delta baseline.
+                deltaTracker.requestResync();
+            } else {
+                deltaTracker.acknowledge(send.presence(), response.deltaSupported());
+            }
+            if (response.resyncRequested()) {
+                deltaTracker.requestResync();
+            }
+            return Outcome.DELIVERED;
+        }
+
+        consecutiveFailures++;
+        if (response.tokenRejected()) {
+            return Outcome.TOKEN_REJECTED;
+        }
+        if (response.resyncRequested()) {
+            deltaTracker.requestResync();
+            manualRequested = true;
+            return Outcome.RESYNC_REQUESTED;
+        }
+        return Outcome.FAILED;
+    }
+
+    /**
+     * Ends a heartbeat, whether or not a response arrived.
+     *
+     * @param churn joins plus leaves this heartbeat reported
+     */
+    public void onFinished(boolean success, int churn) {
+        if (success) {
+            quietStreak = churn == 0 ? quietStreak + 1 : 0;
+        } else {
+            if (consecutiveFailures == 0) consecutiveFailures = 1;
+            backoffUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pacer.backoffMillis(consecutiveFailures));
+        }
+        cycleJitter = pacer.nextCycleJitter();
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    private void applyDirectives(TaleNameAPI.HeartbeatResponse response) {
+        long delay = response.nextHeartbeatMillis();
+        directedUntilNanos = delay >= 0
+                ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.min(delay, MAX_DIRECTED_DELAY_MILLIS))
+                : 0;
+
+        TaleNameAPI.DetailLevel detail = response.detail();
+        if (detail != null && detail != detailLevel) {
+            logger.info("TaleName requested heartbeat detail: " + detail);
+            if (detailLevel == TaleNameAPI.DetailLevel.COUNT || detail == TaleNameAPI.DetailLevel.FULL) {
+                deltaTracker.requestResync();
+            }
+            detailLevel = detail;
+        }
+    }
+
+    /** One heartbeat in flight: its presence, and whether it was sent without a complete player list. */
+    public record Send(PresenceDeltaTracker.Presence presence, boolean countOnly, boolean overCap) {}
+}
@@ -0,0 +1,67 @@
+package net.talename.serverLink.service;
+
+import net.talename.serverLink.config.ConfigManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides when the next heartbeat is due. Pure timing policy; {@link HeartbeatService} does the scheduling.
+ */
+public class HeartbeatPacer {
+
+    private static final long MAX_START_OFFSET_MILLIS = 30_000;
+    private static final int MIN_BUSY_CHURN = 10;
+
+    private final ConfigManager config;
+
+    public HeartbeatPacer(ConfigManager config) {
+        this.config = config;
+    }
+
+    /** Random delay before the first heartbeat so a fleet restarted together does not fire in lockstep. */
+    public long startOffsetMillis() {
+        long bound = Math.min(config.getHeartbeatInterval() * 1000L, MAX_START_OFFSET_MILLIS);
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    /** Exponential backoff from the minimum interval, capped at the maximum, with equal jitter. */
+    public long backoffMillis(int consecutiveFailures) {
+        int exponent = Math.min(Math.max(consecutiveFailures - 1, 0), 20);
+        long delay = Math.min(config.getMinHeartbeatInterval() * 1000L << exponent, config.getMaxHeartbeatInterval() * 1000L);
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    /**
+     * Interval to aim for while healthy: shorter when many players are joining or leaving,
+     * stretched a step per quiet heartbeat when nothing has changed.
+     */
+    public long targetIntervalMillis(int churn, int online, int quietStreak) {
+        long base = config.getHeartbeatInterval() * 1000L;
+        long min = config.getMinHeartbeatInterval() * 1000L;
+        long max = config.getMaxHeartbeatInterval() * 1000L;
+
+        if (churn >= Math.max(MIN_BUSY_CHURN, online / 10)) {
+            return Math.max(min, base / 2);
+        }
+        if (churn > 0) {
+            return base;
+        }
+        return Math.min(max, base + base * quietStreak / 2);
+    }
+
+    /** While the presence channel streams joins and leaves, heartbeats only confirm the full state. */
+    public long liveChannelIntervalMillis() {
+        return config.getMaxHeartbeatInterval() * 1000L;
+    }
+
+    /** Per-cycle ±10% spread so servers that started together drift apart. */
+    public double nextCycleJitter() {
+        return 0.9 + ThreadLocalRandom.current().nextDouble(0.2);
+    }
+
+    /** How often to re-check churn while waiting; reading the counters is cheap. */
+    public long pollMillis() {
+        return config.getMinHeartbeatInterval() * 1000L;
+    }
+}
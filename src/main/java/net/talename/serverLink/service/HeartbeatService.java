@@ -1,56 +1,138 @@
 package net.talename.serverLink.service;
 
-import com.hypixel.hytale.server.core.HytaleServer;
-import com.hypixel.hytale.server.core.universe.PlayerRef;
-import com.hypixel.hytale.server.core.universe.Universe;
-import net.talename.serverLink.Main;
+import net.talename.serverLink.PluginContext;
+import net.talename.serverLink.api.PresenceChannel;
 import net.talename.serverLink.api.TaleNameAPI;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Executors;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class HeartbeatService {
 
-    private final Main plugin;
+    // Covers a batch plus its fallback single send, each bounded by the 30s request timeout.
+    private static final Duration SEND_TIMEOUT = Duration.ofSeconds(75);
+
+    private final PluginContext plugin;
     private final TaleNameAPI api;
     private final ScheduledExecutorService scheduler;
-    private ScheduledFuture<?> heartbeatTask;
-    private int consecutiveFailures = 0;
+    private final AggregatorClient aggregatorClient;
+    private final HeartbeatSpool spool;
+    private final AtomicBoolean replaying = new AtomicBoolean(false);
+    private volatile boolean replayUnsupported = false;
+    private final HeartbeatCycle cycle;
+    private final PresenceChannel presenceChannel;
+    private final UniquePlayerTracker uniquePlayers;
+    private final AtomicBoolean inFlight = new AtomicBoolean(false);
+    private ScheduledFuture<?> wakeTask;
+    private volatile boolean running = false;
 
-    public HeartbeatService(Main plugin) {
+    public HeartbeatService(PluginContext plugin) {
         this.plugin = plugin;
         this.api = new TaleNameAPI(plugin);
-        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread t = new Thread(r, "TaleName-Heartbeat");
-            t.setDaemon(true);
-            return t;
-        });
+        this.aggregatorClient = new AggregatorClient(plugin.getConfigManager().getAggregatorPort());
+        this.scheduler = plugin.getExecutors().scheduler();
+        this.spool = openSpool();
+        this.cycle = new HeartbeatCycle(plugin.getConfigManager(), plugin.getPluginLogger());
+        this.presenceChannel = plugin.getConfigManager().isPresenceChannelEnabled()
+                ? new PresenceChannel(plugin.getConfigManager(), plugin.getTransport(), plugin.getExecutors(),
+                        plugin.getPluginLogger(), this::resyncNow)
+                : null;
+        this.uniquePlayers = new UniquePlayerTracker(() -> plugin.getPlayerIndex().snapshot().players());
+
+        LinkMetrics metrics = plugin.getMetrics();
+        metrics.registerGauge("talename_heartbeat_in_flight", "Heartbeats awaiting a response.",
+                () -> inFlight.get() ? 1 : 0);
+        metrics.registerGauge("talename_heartbeat_consecutive_failures", "Failed heartbeats since the last success.",
+                cycle::getConsecutiveFailures);
+        if (presenceChannel != null) {
+            metrics.registerGauge("talename_presence_channel_live", "1 while the live presence channel is connected.",
+                    () -> presenceChannel.isLive() ? 1 : 0);
+        }
+        if (spool != null) {
+            metrics.registerGauge("talename_spool_entries", "Heartbeats waiting in the offline spool.", spool::size);
+        }
     }
 
-    public void start() {
-        if (heartbeatTask != null && !heartbeatTask.isCancelled()) return;
+    private HeartbeatSpool openSpool() {
+        if (!plugin.getConfigManager().isSpoolEnabled()) return null;
+        try {
+            return new HeartbeatSpool(plugin.getDataDirectory().resolve("heartbeat-spool.dat"),
+                    plugin.getConfigManager().getSpoolSizeBytes(), plugin.getPluginLogger());
+        } catch (IOException e) {
+            plugin.getPluginLogger().warning("Failed to open heartbeat spool: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public synchronized void start() {
+        if (running) return;
         if (!plugin.getConfigManager().isLinked()) return;
 
         int interval = plugin.getConfigManager().getHeartbeatInterval();
-        plugin.getPluginLogger().info("Starting heartbeat service (interval: " + interval + "s)");
+        long offset = cycle.pacer().startOffsetMillis();
+        plugin.getPluginLogger().info("Starting heartbeat service (interval: " + interval + "s, first in " + offset + "ms)");
 
-        sendHeartbeat();
-        heartbeatTask = scheduler.scheduleAtFixedRate(this::sendHeartbeat, interval, interval, TimeUnit.SECONDS);
+        running = true;
+        cycle.reset();
+        scheduleWake(offset);
+        if (presenceChannel != null) {
+            presenceChannel.start();
+        }
     }
 
-    public void stop() {
-        if (heartbeatTask != null) {
-            heartbeatTask.cancel(false);
-            heartbeatTask = null;
+    public synchronized void stop() {
+        running = false;
+        if (presenceChannel != null) {
+            presenceChannel.stop();
+        }
+        if (wakeTask != null) {
+            wakeTask.cancel(false);
+            wakeTask = null;
+        }
+        if (spool != null) {
+            spool.force();
         }
     }
 
     public boolean isRunning() {
-        return heartbeatTask != null && !heartbeatTask.isCancelled();
+        return running;
+    }
+
+    /** Re-evaluates when the next heartbeat is due, e.g. after the interval settings changed. */
+    public void reschedule() {
+        scheduleWake(0);
+    }
+
+    private synchronized void scheduleWake(long delayMillis) {
+        if (!running) return;
+        if (wakeTask != null) {
+            wakeTask.cancel(false);
+        }
+        wakeTask = scheduler.schedule(this::tick, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+    }
+
+    private void tick() {
+        // A send in flight reschedules on completion, which is where manual triggers coalesce.
+        if (!running || inFlight.get()) return;
+
+        PlayerIndex index = plugin.getPlayerIndex();
+        int churn = index.getJoinsSinceHeartbeat() + index.getLeavesSinceHeartbeat();
+        long waitMillis = cycle.millisUntilDue(churn, index.size(),
+                presenceChannel != null && presenceChannel.isLive());
+        if (waitMillis <= 0) {
+            sendHeartbeat();
+        } else {
+            scheduleWake(Math.min(waitMillis, cycle.pacer().pollMillis()));
+        }
     }
 
     private void sendHeartbeat() {
@@ -59,45 +141,273 @@ public class HeartbeatService {
             stop();
             return;
         }
+        if (!inFlight.compareAndSet(false, true)) return;
+
+        PlayerIndex.Churn churn;
+        HeartbeatCycle.Send send;
+        TaleNameAPI.HeartbeatData data;
+        int listCap = plugin.getConfigManager().getPlayerListCap();
+        boolean overCap = listCap > 0 && plugin.getPlayerIndex().size() > listCap;
+        try {
+            churn = plugin.getPlayerIndex().markHeartbeat();
+            send = cycle.begin(plugin.getPlayerIndex().snapshot().players(), overCap);
+            data = collectHeartbeatData(send.presence(), send.countOnly(), overCap ? listCap : 0);
+        } catch (RuntimeException e) {
+            plugin.getPluginLogger().warning("Failed to collect heartbeat data: " + e.getMessage());
+            onHeartbeatFinished(false, 0);
+            return;
+        }
 
-        api.sendHeartbeat(token, collectHeartbeatData())
-                .thenAccept(response -> {
-                    if (response.success()) {
-                        consecutiveFailures = 0;
-                    } else {
-                        consecutiveFailures++;
+        plugin.getExecutors().withTimeout(dispatch(token, data), SEND_TIMEOUT)
+                .thenApply(response -> {
+                    HeartbeatCycle.Outcome outcome = cycle.onResponse(send, response);
+                    if (outcome != HeartbeatCycle.Outcome.DELIVERED) {
                         plugin.getPluginLogger().warning("Heartbeat failed: " + response.message());
-                        if (response.message().contains("Invalid server token")) {
+                    }
+                    switch (outcome) {
+                        case DELIVERED -> {
+                            plugin.getConfigManager().recordHeartbeatSuccess();
+                            startReplay();
+                        }
+                        case TOKEN_REJECTED -> {
                             plugin.getConfigManager().clearLinkData();
                             stop();
                         }
+                        case FAILED -> spoolFailed(send.presence(), data);
+                        case RESYNC_REQUESTED -> { }
                     }
+                    return response.success();
+                })
+                .whenComplete((success, e) -> {
+                    if (e != null) {
+                        // Timeouts and transport errors are exactly the outages the spool is for.
+                        plugin.getPluginLogger().warning("Heartbeat failed: " + e.getMessage());
+                        spoolFailed(send.presence(), data);
+                    }
+                    onHeartbeatFinished(success != null && success, churn.total());
                 });
     }
 
-    private TaleNameAPI.HeartbeatData collectHeartbeatData() {
-        Universe universe = Universe.get();
-        HytaleServer server = HytaleServer.get();
-        List<PlayerRef> players = universe.getPlayers();
-        
+    private void onHeartbeatFinished(boolean success, int churn) {
+        cycle.onFinished(success, churn);
+        if (!success) {
+            plugin.getConfigManager().recordHeartbeatFailure();
+        }
+        inFlight.set(false);
+        scheduleWake(0);
+    }
+
+    private void spoolFailed(PresenceDeltaTracker.Presence presence, TaleNameAPI.HeartbeatData data) {
+        if (spool == null) return;
+        // A delta is meaningless once its baseline moves on, so the spool always keeps full snapshots.
+        TaleNameAPI.HeartbeatData full = data.isDelta()
+                ? new TaleNameAPI.HeartbeatData(data.playersOnline(), data.maxPlayers(), data.motd(),
+                        new ArrayList<>(presence.online()), data.sequence(), -1, null, null, data.health(),
+                        data.uniquePlayers(), data.worlds())
+                : data;
+        spool.append(System.currentTimeMillis(), api.encodeHeartbeatJson(full));
+    }
+
+    private void startReplay() {
+        if (spool == null || replayUnsupported || spool.isEmpty() || !replaying.compareAndSet(false, true)) return;
+
+        // Spread recovery across the fleet instead of every server replaying the moment the API is back.
+        long delayMillis = ThreadLocalRandom.current()
+                .nextLong(plugin.getConfigManager().getSpoolReplayIntervalSeconds() * 1000L + 1);
+        plugin.getPluginLogger().info("Replaying " + spool.size() + " spooled heartbeats");
+        scheduler.schedule(this::replayBatch, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Sends the next batch; {@code replaying} stays set only while a batch or the next one is pending. */
+    private void replayBatch() {
+        boolean pending = false;
+        try {
+            String token = plugin.getConfigManager().getServerToken();
+            List<HeartbeatSpool.SpooledHeartbeat> batch =
+                    spool.peek(plugin.getConfigManager().getSpoolReplayBatchSize());
+            if (token == null || batch.isEmpty()) return;
+
+            List<TaleNameAPI.ReplayEntry> entries = new ArrayList<>(batch.size());
+            for (HeartbeatSpool.SpooledHeartbeat spooled : batch) {
+                entries.add(new TaleNameAPI.ReplayEntry(spooled.timestamp(), spooled.body()));
+            }
+
+            CompletableFuture<TaleNameAPI.ReplayResponse> replay =
+                    plugin.getExecutors().withTimeout(api.replayHeartbeats(token, entries), SEND_TIMEOUT);
+            replay.whenComplete((response, e) -> {
+                boolean next = false;
+                try {
+                    next = onReplayed(batch, response, e);
+                } finally {
+                    if (!next) replaying.set(false);
+                }
+            });
+            pending = true;
+        } finally {
+            if (!pending) replaying.set(false);
+        }
+    }
+
+    /** @return true if the next batch has been scheduled */
+    private boolean onReplayed(List<HeartbeatSpool.SpooledHeartbeat> batch, TaleNameAPI.ReplayResponse response,
+                               Throwable e) {
+        if (e != null) {
+            plugin.getPluginLogger().warning("Heartbeat replay failed: " + e.getMessage());
+        } else if (!response.supported()) {
+            // Remembered like the aggregator's missing batch endpoint, so replay is not retried after every
+            // heartbeat; the spool is kept for a plugin restart against an API that has one.
+            replayUnsupported = true;
+            plugin.getPluginLogger().warning("API has no heartbeat replay endpoint; keeping "
+                    + spool.size() + " spooled heartbeats until restart");
+        } else if (response.result().success()) {
+            spool.commit(batch.get(batch.size() - 1));
+            if (!spool.isEmpty()) {
+                scheduler.schedule(this::replayBatch,
+                        plugin.getConfigManager().getSpoolReplayIntervalSeconds(), TimeUnit.SECONDS);
+                return true;
+            }
+            plugin.getPluginLogger().info("Heartbeat spool replay complete");
+        } else {
+            plugin.getPluginLogger().warning("Heartbeat replay failed: " + response.result().message());
+        }
+        return false;
+    }
+
+    private CompletableFuture<TaleNameAPI.HeartbeatResponse> dispatch(String token, TaleNameAPI.HeartbeatData data) {
+        if (plugin.getConfigManager().isAggregatorMember()) {
+            // Members only ever send full snapshots: the aggregator acks receipt, not API acceptance.
+            byte[] body = api.encodeHeartbeatJson(data);
+            return CompletableFuture.supplyAsync(() -> aggregatorClient.submit(token, body), plugin.getExecutors().io())
+                    .thenCompose(ack -> {
+                        if (ack == AggregatorServer.ACK_QUEUED) {
+                            return CompletableFuture.completedFuture(
+                                    new TaleNameAPI.HeartbeatResponse(true, "Queued with aggregator", false, false));
+                        } else if (ack == AggregatorServer.ACK_TOKEN_REJECTED) {
+                            return CompletableFuture.completedFuture(
+                                    TaleNameAPI.HeartbeatResponse.invalidToken());
+                        } else if (ack == AggregatorServer.ACK_UNDELIVERED) {
+                            // The queued ack for our previous heartbeat never turned into a delivery.
+                            plugin.getConfigManager().recordHeartbeatFailure();
+                            plugin.getPluginLogger().warning("Aggregator did not deliver the previous heartbeat; "
+                                    + "sending directly");
+                        }
+                        // Aggregator unreachable or unable to batch: send this one ourselves.
+                        return sendDirect(token, data);
+                    });
+        }
+        return sendDirect(token, data);
+    }
+
+    private CompletableFuture<TaleNameAPI.HeartbeatResponse> sendDirect(String token, TaleNameAPI.HeartbeatData data) {
+        AggregatorServer aggregator = plugin.getAggregatorServer();
+        if (aggregator != null) {
+            List<TaleNameAPI.BatchEntry> members = aggregator.drain();
+            if (!members.isEmpty()) {
+                CompletableFuture<TaleNameAPI.BatchResponse> sent = api.sendHeartbeatBatch(token, data, members);
+                // Settled on the request itself, so a heartbeat cut short by SEND_TIMEOUT still re-queues its members.
+                sent.whenComplete((batch, e) -> aggregator.recordResults(members, batch));
+                return sent.thenCompose(batch -> batch.supported()
+                        ? CompletableFuture.completedFuture(batch.own())
+                        : api.sendHeartbeat(token, data));
+            }
+        }
+
+        return api.sendHeartbeat(token, data);
+    }
+
+    /**
+     * @param listCap if positive, the online count is above the configured cap and the player list
+     *                is cut to this many entries or left out
+     */
+    private TaleNameAPI.HeartbeatData collectHeartbeatData(PresenceDeltaTracker.Presence presence, boolean countOnly,
+                                                           int listCap) {
+        HealthSampler sampler = plugin.getHealthSampler();
+        TaleNameAPI.HealthSummary health = sampler != null ? sampler.drainSummary() : null;
+        TaleNameAPI.UniquePlayers unique = plugin.getConfigManager().isUniqueSketchesEnabled()
+                ? uniquePlayers.snapshot()
+                : null;
+        List<TaleNameAPI.WorldCount> worlds = plugin.getConfigManager().isWorldCountsEnabled()
+                ? plugin.getWorldPopulation().snapshot()
+                : null;
+
+        if (countOnly || listCap > 0) {
+            List<UUID> playerList = null;
+            if (!countOnly && plugin.getConfigManager().isPlayerListTruncated()) {
+                playerList = new ArrayList<>(listCap);
+                for (UUID player : presence.online()) {
+                    if (playerList.size() == listCap) break;
+                    playerList.add(player);
+                }
+            }
+            return new TaleNameAPI.HeartbeatData(presence.online().size(), plugin.getMaxPlayers(),
+                    plugin.getMotd(), playerList, presence.sequence(), -1, null, null, health, unique,
+                    worlds);
+        }
         return new TaleNameAPI.HeartbeatData(
-                universe.getPlayerCount(),
-                server.getConfig().getMaxPlayers(),
-                server.getConfig().getMotd(),
-                players.stream().map(PlayerRef::getUuid).collect(Collectors.toList())
+                presence.online().size(),
+                plugin.getMaxPlayers(),
+                plugin.getMotd(),
+                presence.isDelta() ? null : new ArrayList<>(presence.online()),
+                presence.sequence(),
+                presence.baseSequence(),
+                presence.joined(),
+                presence.left(),
+                health,
+                unique,
+                worlds
         );
     }
 
+    /**
+     * Requests a heartbeat as soon as possible. Repeated calls, or a call while one is in flight,
+     * collapse into a single send.
+     */
     public void sendHeartbeatNow() {
-        scheduler.execute(this::sendHeartbeat);
+        if (!running) {
+            start();
+        }
+        cycle.requestNow();
+        if (!inFlight.get()) {
+            scheduleWake(0);
+        }
+    }
+
+    public void playerJoined(UUID player) {
+        uniquePlayers.playerJoined(player);
+        if (presenceChannel != null) {
+            presenceChannel.playerJoined(player);
+        }
+    }
+
+    public void playerLeft(UUID player) {
+        if (presenceChannel != null) {
+            presenceChannel.playerLeft(player);
+        }
+    }
+
+    /** The presence channel could not resume, so the API needs a full snapshot. */
+    private void resyncNow() {
+        cycle.requestResync();
+        sendHeartbeatNow();
+    }
+
+    public int getConsecutiveFailures() {
+        return cycle.getConsecutiveFailures();
     }
 
     public TaleNameAPI getApi() {
         return api;
     }
 
+    /**
+     * Stops heartbeats and closes the spool and the API's compressor. The scheduler belongs to
+     * {@link net.talename.serverLink.PluginExecutors}.
+     */
     public void shutdown() {
         stop();
-        scheduler.shutdown();
+        if (spool != null) {
+            spool.close();
+        }
+        api.close();
     }
 }
@@ -0,0 +1,223 @@
+package net.talename.serverLink.service;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Fixed-size, memory-mapped ring of heartbeats that could not be delivered.
+ * Appends overwrite the oldest entries once full, and the header keeps head/tail so the spool survives restarts.
+ * Record lengths are checked against the ring before use; a record that cannot fit between the head and the
+ * tail means the file was damaged, and everything spooled is then dropped with a warning.
+ * Once closed, the mapping is released and every operation is a no-op.
+ */
+public class HeartbeatSpool {
+
+    private static final int MAGIC = 0x544E5350; // "TNSP"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES + Long.BYTES;
+
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_VERSION = 4;
+    private static final int OFF_CAPACITY = 8;
+    private static final int OFF_HEAD = 16;
+    private static final int OFF_TAIL = 24;
+    private static final int OFF_COUNT = 32;
+
+    private final Logger logger;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final long capacity;
+    private final ByteBuffer scratch = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+    // Logical, ever-increasing offsets into the ring; the physical position is offset % capacity.
+    private long head;
+    private long tail;
+    private int count;
+    private boolean closed;
+
+    public HeartbeatSpool(Path file, int sizeBytes, Logger logger) throws IOException {
+        this.logger = logger;
+        this.capacity = Math.max(sizeBytes, 4096) - HEADER_BYTES;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + capacity);
+
+        if (map.getInt(OFF_MAGIC) == MAGIC && map.getInt(OFF_VERSION) == VERSION
+                && map.getLong(OFF_CAPACITY) == capacity) {
+            head = map.getLong(OFF_HEAD);
+            tail = map.getLong(OFF_TAIL);
+            count = map.getInt(OFF_COUNT);
+            if (head > tail || tail - head > capacity || count < 0) {
+                reset();
+            }
+        } else {
+            // New file, or the configured size changed: start empty.
+            reset();
+        }
+    }
+
+    private void reset() {
+        head = 0;
+        tail = 0;
+        count = 0;
+        map.putInt(OFF_MAGIC, MAGIC);
+        map.putInt(OFF_VERSION, VERSION);
+        map.putLong(OFF_CAPACITY, capacity);
+        writeHeader();
+    }
+
+    private void writeHeader() {
+        map.putLong(OFF_HEAD, head);
+        map.putLong(OFF_TAIL, tail);
+        map.putInt(OFF_COUNT, count);
+    }
+
+    public synchronized boolean append(long timestamp, byte[] body) {
+        long needed = RECORD_HEADER_BYTES + (long) body.length;
+        if (closed || needed > capacity) return false;
+
+        while (capacity - (tail - head) < needed) {
+            if (!evictOldest()) break;
+        }
+
+        scratch.clear();
+        scratch.putInt(body.length).putLong(timestamp);
+        writeRing(tail, scratch.array(), 0, RECORD_HEADER_BYTES);
+        writeRing(tail + RECORD_HEADER_BYTES, body, 0, body.length);
+        // Publish the record only after its bytes are in place.
+        tail += needed;
+        count++;
+        writeHeader();
+        return true;
+    }
+
+    /** @return false if the oldest record was corrupt and the spool has been emptied instead */
+    private boolean evictOldest() {
+        int length = recordLength(head);
+        if (length < 0) {
+            discardCorrupt(head);
+            return false;
+        }
+        head += RECORD_HEADER_BYTES + length;
+        count--;
+        return true;
+    }
+
+    /** Returns up to {@code max} of the oldest records without removing them. */
+    public synchronized List<SpooledHeartbeat> peek(int max) {
+        if (closed) return List.of();
+        List<SpooledHeartbeat> records = new ArrayList<>(Math.min(max, count));
+        long offset = head;
+        for (int i = 0; i < max && offset < tail; i++) {
+            int length = recordLength(offset);
+            if (length < 0) {
+                // Records before this one are intact, and their offsets are behind the new head.
+                discardCorrupt(offset);
+                break;
+            }
+            readRing(offset + Integer.BYTES, scratch.array(), 0, Long.BYTES);
+            scratch.clear();
+            long timestamp = scratch.getLong();
+            byte[] body = new byte[length];
+            readRing(offset + RECORD_HEADER_BYTES, body, 0, length);
+            long next = offset + RECORD_HEADER_BYTES + length;
+            records.add(new SpooledHeartbeat(timestamp, body, next));
+            offset = next;
+        }
+        return records;
+    }
+
+    /** Drops records up to and including {@code last}, once they have been replayed. */
+    public synchronized void commit(SpooledHeartbeat last) {
+        // Entries may have been evicted, or discarded as corrupt, while the replay was in flight.
+        if (closed || last.endOffset() <= head) return;
+        while (head < last.endOffset()) {
+            if (!evictOldest()) return;
+        }
+        writeHeader();
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    public synchronized void force() {
+        if (!closed) {
+            map.force();
+        }
+    }
+
+    /** Flushes and unmaps the spool; a plugin reload would otherwise keep the old mapping until it is collected. */
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        map.force();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        unmap(map);
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            unsafe.getClass().getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // No access to the cleaner: the mapping goes when the buffer is collected.
+        }
+    }
+
+    /** @return the body length of the record at {@code offset}, or -1 if no such record fits before the tail */
+    private int recordLength(long offset) {
+        readRing(offset, scratch.array(), 0, Integer.BYTES);
+        scratch.clear();
+        int length = scratch.getInt();
+        if (length < 0 || tail - offset < RECORD_HEADER_BYTES + (long) length) {
+            return -1;
+        }
+        return length;
+    }
+
+    private void discardCorrupt(long offset) {
+        logger.warning("Heartbeat spool is corrupt at offset " + offset + "; discarding " + count
+                + " spooled heartbeats");
+        // Offsets keep increasing, so a replay in flight cannot commit records appended after this.
+        head = tail;
+        count = 0;
+        writeHeader();
+    }
+
+    private void writeRing(long offset, byte[] src, int from, int length) {
+        int position = (int) (offset % capacity);
+        int first = (int) Math.min(length, capacity - position);
+        map.put(HEADER_BYTES + position, src, from, first);
+        if (first < length) {
+            map.put(HEADER_BYTES, src, from + first, length - first);
+        }
+    }
+
+    private void readRing(long offset, byte[] dst, int from, int length) {
+        int position = (int) (offset % capacity);
+        int first = (int) Math.min(length, capacity - position);
+        map.get(HEADER_BYTES + position, dst, from, first);
+        if (first < length) {
+            map.get(HEADER_BYTES, dst, from + first, length - first);
+        }
+    }
+
+    public record SpooledHeartbeat(long timestamp, byte[] body, long endOffset) {}
+}
@@ -0,0 +1,148 @@
+package net.talename.serverLink.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and histograms for traffic to the TaleName API. Every {@code record*} method is allocation-free;
+ * formatting happens only when someone reads the metrics.
+ */
+public class LinkMetrics {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final LatencyHistogram rtt = new LatencyHistogram();
+    private final LatencyHistogram serialization = new LatencyHistogram();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder connectionErrors = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final AtomicLongArray statusCodes = new AtomicLongArray(600);
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+    public void recordResponse(long rttNanos, int status, long sent, long received) {
+        rtt.record(rttNanos);
+        if (status >= 200 && status < 300) {
+            successes.increment();
+        } else {
+            failures.increment();
+        }
+        if (status >= 100 && status < 600) {
+            statusCodes.incrementAndGet(status);
+        }
+        bytesSent.add(sent);
+        bytesReceived.add(received);
+    }
+
+    public void recordFailure(long rttNanos, boolean timeout, long sent) {
+        rtt.record(rttNanos);
+        failures.increment();
+        if (timeout) {
+            timeouts.increment();
+        } else {
+            connectionErrors.increment();
+        }
+        bytesSent.add(sent);
+    }
+
+    public void recordSerialization(long nanos) {
+        serialization.record(nanos);
+    }
+
+    /** Registers a sampled value such as a queue depth. Call once at startup, not per heartbeat. */
+    public void registerGauge(String name, String help, LongSupplier supplier) {
+        gauges.put(name, new Gauge(help, supplier));
+    }
+
+    public List<String> summaryLines() {
+        List<String> lines = new ArrayList<>();
+        lines.add("Requests: " + successes.sum() + " ok, " + failures.sum() + " failed ("
+                + timeouts.sum() + " timeouts, " + connectionErrors.sum() + " connection errors)");
+        lines.add("RTT: p50 " + millis(rtt.percentileNanos(0.5)) + ", p90 " + millis(rtt.percentileNanos(0.9))
+                + ", p99 " + millis(rtt.percentileNanos(0.99)) + ", max " + millis(rtt.maxNanos()));
+        lines.add("Serialization: p50 " + millis(serialization.percentileNanos(0.5))
+                + ", p99 " + millis(serialization.percentileNanos(0.99)));
+        lines.add("Bytes: " + bytesSent.sum() + " sent, " + bytesReceived.sum() + " received");
+
+        StringBuilder codes = new StringBuilder("Status codes:");
+        for (int code = 100; code < 600; code++) {
+            long n = statusCodes.get(code);
+            if (n > 0) codes.append(' ').append(code).append('=').append(n);
+        }
+        lines.add(codes.toString());
+
+        gauges.forEach((name, gauge) -> lines.add(name + ": " + gauge.supplier().getAsLong()));
+        return lines;
+    }
+
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(2048);
+        counter(out, "talename_requests_total", "Requests to the TaleName API by result.",
+                "result=\"success\"", successes.sum());
+        sample(out, "talename_requests_total", "result=\"failure\"", failures.sum());
+        counter(out, "talename_request_errors_total", "Requests that got no HTTP response.",
+                "kind=\"timeout\"", timeouts.sum());
+        sample(out, "talename_request_errors_total", "kind=\"connection\"", connectionErrors.sum());
+
+        header(out, "talename_responses_total", "HTTP responses by status code.", "counter");
+        for (int code = 100; code < 600; code++) {
+            long n = statusCodes.get(code);
+            if (n > 0) sample(out, "talename_responses_total", "code=\"" + code + "\"", n);
+        }
+
+        summary(out, "talename_request_rtt_seconds", "Request round-trip time.", rtt);
+        summary(out, "talename_serialization_seconds", "Time to encode and compress a request body.", serialization);
+
+        counter(out, "talename_bytes_sent_total", "Request body bytes on the wire.", null, bytesSent.sum());
+        counter(out, "talename_bytes_received_total", "Response body bytes on the wire.", null, bytesReceived.sum());
+
+        gauges.forEach((name, gauge) -> {
+            header(out, name, gauge.help(), "gauge");
+            sample(out, name, null, gauge.supplier().getAsLong());
+        });
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, String help, String labels, long value) {
+        header(out, name, help, "counter");
+        sample(out, name, labels, value);
+    }
+
+    private static void summary(StringBuilder out, String name, String help, LatencyHistogram histogram) {
+        header(out, name, help, "summary");
+        for (double q : QUANTILES) {
+            out.append(name).append("{quantile=\"").append(q).append("\"} ")
+                    .append(seconds(histogram.percentileNanos(q))).append('\n');
+        }
+        out.append(name).append("_sum ").append(seconds(histogram.sumNanos())).append('\n');
+        out.append(name).append("_count ").append(histogram.count()).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (labels != null) out.append('{').append(labels).append('}');
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1fms", nanos / 1e6);
+    }
+
+    private record Gauge(String help, LongSupplier supplier) {}
+}
@@ -0,0 +1,165 @@
+package net.talename.serverLink.service;
+
+import net.talename.serverLink.PluginContext;
+import net.talename.serverLink.api.TaleNameAPI;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs the link flow: one operation at a time, retried with backoff under the same code and idempotency key
+ * when the failure was transient, reporting progress to whoever started it. Nothing here blocks; attempts
+ * complete on the HTTP client's threads and retries wait on the plugin scheduler.
+ */
+public class LinkService {
+
+    public enum State { IDLE, LINKING, WAITING_TO_RETRY }
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_RETRY_MILLIS = 2000;
+    private static final long MAX_RETRY_MILLIS = 30_000;
+    // Covers a hedged attempt: the 30s request timeout plus the hedge delay.
+    private static final Duration ATTEMPT_TIMEOUT = Duration.ofSeconds(45);
+
+    private final PluginContext plugin;
+    private Operation current;
+
+    public LinkService(PluginContext plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Starts linking with {@code linkCode} unless a link is already in progress.
+     *
+     * @param progress receives every status message for this operation, from whichever thread produces it
+     * @return false if another link is in progress; {@code progress} has then been told so
+     */
+    public boolean link(String linkCode, TaleNameAPI.ServerInfo info, Consumer<String> progress) {
+        Operation operation;
+        synchronized (this) {
+            if (current != null) {
+                progress.accept("A link is already in progress (attempt " + current.attempt + " of " + MAX_ATTEMPTS
+                        + "). Please wait for it to finish.");
+                return false;
+            }
+            operation = new Operation(linkCode, info, progress);
+            current = operation;
+        }
+        attempt(operation);
+        return true;
+    }
+
+    /**
+     * Stops retrying a link in progress. An attempt already sent may have linked the server, so it is left to
+     * finish and its result is still applied; only the retries are dropped.
+     *
+     * @return the state that was cancelled: {@link State#LINKING} if an attempt is still in flight, IDLE if there
+     *         was nothing left to cancel
+     */
+    public synchronized State cancel() {
+        if (current == null || current.cancelled) return State.IDLE;
+        current.cancelled = true;
+        State state = current.state;
+        if (state == State.WAITING_TO_RETRY) {
+            current.retryTask.cancel(false);
+            current = null;
+        }
+        return state;
+    }
+
+    public synchronized State getState() {
+        return current == null ? State.IDLE : current.state;
+    }
+
+    public synchronized int getAttempt() {
+        return current == null ? 0 : current.attempt;
+    }
+
+    private void attempt(Operation operation) {
+        synchronized (this) {
+            if (operation.cancelled) return;
+            operation.attempt++;
+            operation.state = State.LINKING;
+            operation.retryTask = null;
+        }
+        operation.progress.accept(operation.attempt == 1
+                ? "Linking..."
+                : "Linking, attempt " + operation.attempt + " of " + MAX_ATTEMPTS + "...");
+
+        CompletableFuture<TaleNameAPI.LinkResponse> response = plugin.getExecutors().withTimeout(
+                plugin.getHeartbeatService().getApi().linkServer(operation.code, operation.info, operation.key),
+                ATTEMPT_TIMEOUT);
+        // Handled where the response completes: every step below is quick and none of it blocks.
+        response.whenComplete((result, e) -> {
+            if (e != null) {
+                result = new TaleNameAPI.LinkResponse(false, null, null, "No response from TaleName", true);
+            }
+            finish(operation, result);
+        });
+    }
+
+    private void finish(Operation operation, TaleNameAPI.LinkResponse response) {
+        synchronized (this) {
+            if (response.success()) {
+                // Stored before the operation is released, so a new link cannot start in between and find the
+                // server still unlinked.
+                plugin.getConfigManager().setLinkData(response.serverToken(), response.serverId());
+                current = null;
+            } else if (operation.cancelled) {
+                current = null;
+                operation.progress.accept("Link cancelled: " + response.message());
+                return;
+            } else if (!response.retryable() || operation.attempt >= MAX_ATTEMPTS) {
+                current = null;
+            } else {
+                long delay = retryDelayMillis(operation.attempt);
+                operation.state = State.WAITING_TO_RETRY;
+                operation.retryTask = plugin.getExecutors().scheduler()
+                        .schedule(() -> attempt(operation), delay, TimeUnit.MILLISECONDS);
+                operation.progress.accept("Link attempt failed (" + response.message() + "), retrying in "
+                        + Math.max(1, delay / 1000) + "s...");
+                return;
+            }
+        }
+
+        if (response.success()) {
+            operation.progress.accept("Server linked! ID: " + response.serverId());
+            plugin.getTransport().prewarm();
+            // Starts the heartbeat service and sends the first heartbeat right away instead of after the start offset.
+            plugin.getHeartbeatService().sendHeartbeatNow();
+        } else if (response.retryable()) {
+            operation.progress.accept("Failed after " + operation.attempt + " attempts: " + response.message());
+        } else {
+            operation.progress.accept("Failed: " + response.message());
+        }
+    }
+
+    private static long retryDelayMillis(int attempt) {
+        long delay = Math.min(BASE_RETRY_MILLIS << Math.min(attempt - 1, 10), MAX_RETRY_MILLIS);
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    private static final class Operation {
+        final String code;
+        final TaleNameAPI.ServerInfo info;
+        final Consumer<String> progress;
+        // Shared by every attempt, so a retry after a lost response cannot link twice.
+        final String key = UUID.randomUUID().toString();
+        int attempt;
+        State state = State.LINKING;
+        ScheduledFuture<?> retryTask;
+        volatile boolean cancelled;
+
+        Operation(String code, TaleNameAPI.ServerInfo info, Consumer<String> progress) {
+            this.code = code;
+            this.info = info;
+            this.progress = progress;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package net.talename.serverLink.service;
+
+import net.talename.serverLink.PluginExecutors;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Periodically writes {@link LinkMetrics} in Prometheus text format to {@code metrics.prom} in the plugin
+ * data folder, e.g. for node_exporter's textfile collector. The file is replaced atomically.
+ */
+public class MetricsExporter {
+
+    private final LinkMetrics metrics;
+    private final Path file;
+    private final Logger logger;
+    private final PluginExecutors executors;
+    private ScheduledFuture<?> task;
+
+    public MetricsExporter(LinkMetrics metrics, Path dataDirectory, Logger logger, PluginExecutors executors) {
+        this.metrics = metrics;
+        this.file = dataDirectory.resolve("metrics.prom");
+        this.logger = logger;
+        this.executors = executors;
+    }
+
+    public synchronized void start(int intervalSeconds) {
+        // The timer only hands off; the file write runs on an I/O thread.
+        task = executors.scheduler().scheduleWithFixedDelay(() -> executors.io().execute(this::write),
+                intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void write() {
+        Path temp = file.resolveSibling("metrics.prom.tmp");
+        try {
+            Files.writeString(temp, metrics.toPrometheus());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warning("Failed to write metrics file: " + e.getMessage());
+        }
+    }
+
+    /** Stops the periodic write and writes one final snapshot on the calling thread. */
+    public synchronized void shutdown() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        write();
+    }
+}
@@ -0,0 +1,88 @@
+package net.talename.serverLink.service;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Online-player index maintained from connect/disconnect events, so heartbeats never walk the universe.
+ * Snapshots are immutable and cached until the next membership change.
+ */
+public class PlayerIndex {
+
+    private final Set<UUID> online = new HashSet<>();
+    private final AtomicInteger joinsSinceHeartbeat = new AtomicInteger();
+    private final AtomicInteger leavesSinceHeartbeat = new AtomicInteger();
+    private volatile long version = 0;
+    // Read by the online-players gauge, which must not copy the set on every export.
+    private volatile int size = 0;
+    private volatile Snapshot cached = new Snapshot(0, Set.of());
+
+    public synchronized void playerJoined(UUID uuid) {
+        if (online.add(uuid)) {
+            version++;
+            size = online.size();
+            joinsSinceHeartbeat.incrementAndGet();
+        }
+    }
+
+    public synchronized void playerLeft(UUID uuid) {
+        if (online.remove(uuid)) {
+            version++;
+            size = online.size();
+            leavesSinceHeartbeat.incrementAndGet();
+        }
+    }
+
+    /**
+     * Adds players that were already online before the listeners were registered (e.g. after a plugin reload).
+     */
+    public synchronized void seed(Collection<UUID> players) {
+        if (online.addAll(players)) {
+            version++;
+            size = online.size();
+        }
+    }
+
+    public Snapshot snapshot() {
+        Snapshot current = cached;
+        if (current.version() == version) {
+            return current;
+        }
+        synchronized (this) {
+            if (cached.version() != version) {
+                cached = new Snapshot(version, Set.copyOf(online));
+            }
+            return cached;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getJoinsSinceHeartbeat() {
+        return joinsSinceHeartbeat.get();
+    }
+
+    public int getLeavesSinceHeartbeat() {
+        return leavesSinceHeartbeat.get();
+    }
+
+    /**
+     * Returns the join/leave counts accumulated since the previous call and starts a new window.
+     */
+    public Churn markHeartbeat() {
+        return new Churn(joinsSinceHeartbeat.getAndSet(0), leavesSinceHeartbeat.getAndSet(0));
+    }
+
+    public record Snapshot(long version, Set<UUID> players) {}
+
+    public record Churn(int joins, int leaves) {
+        public int total() {
+            return joins + leaves;
+        }
+    }
+}
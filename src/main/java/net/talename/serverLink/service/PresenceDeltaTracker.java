@@ -0,0 +1,67 @@
+package net.talename.serverLink.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Tracks which player set the API has acknowledged so heartbeats can carry only joins and leaves.
+ * A full snapshot is sent on start, after a resync request, and whenever the API has not confirmed delta support.
+ */
+public class PresenceDeltaTracker {
+
+    private Set<UUID> acknowledged = Set.of();
+    private long acknowledgedSequence = -1;
+    private long nextSequence = 0;
+    private boolean deltaSupported = false;
+    private boolean resyncPending = true;
+
+    public synchronized Presence next(Collection<UUID> online, boolean deltaEnabled) {
+        Set<UUID> snapshot = Set.copyOf(online);
+        long sequence = nextSequence++;
+
+        if (!deltaEnabled || !deltaSupported || resyncPending || acknowledgedSequence < 0) {
+            return new Presence(sequence, -1, snapshot, null, null);
+        }
+
+        List<UUID> joined = new ArrayList<>();
+        for (UUID uuid : snapshot) {
+            if (!acknowledged.contains(uuid)) joined.add(uuid);
+        }
+        List<UUID> left = new ArrayList<>();
+        for (UUID uuid : acknowledged) {
+            if (!snapshot.contains(uuid)) left.add(uuid);
+        }
+        return new Presence(sequence, acknowledgedSequence, snapshot, joined, left);
+    }
+
+    public synchronized void acknowledge(Presence sent, boolean deltaSupported) {
+        this.deltaSupported = deltaSupported;
+        // A late ack for an older heartbeat must not roll the baseline back.
+        if (sent.sequence() <= acknowledgedSequence) return;
+        if (sent.isDelta() && sent.baseSequence() != acknowledgedSequence) return;
+
+        acknowledged = sent.online();
+        acknowledgedSequence = sent.sequence();
+        resyncPending = false;
+    }
+
+    public synchronized void requestResync() {
+        resyncPending = true;
+    }
+
+    public synchronized void reset() {
+        acknowledged = Set.of();
+        acknowledgedSequence = -1;
+        deltaSupported = false;
+        resyncPending = true;
+    }
+
+    public record Presence(long sequence, long baseSequence, Set<UUID> online, List<UUID> joined, List<UUID> left) {
+        public boolean isDelta() {
+            return joined != null;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package net.talename.serverLink.service;
+
+import net.talename.serverLink.PluginContext;
+import net.talename.serverLink.api.HeartbeatEncoder;
+import net.talename.serverLink.api.PayloadBuffer;
+import net.talename.serverLink.api.TaleNameAPI;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional status endpoint for server lists, monitoring and bots: {@code GET /status} over HTTP and a
+ * {@code TNST} datagram over UDP, on the same port. Answers come from a read-only direct buffer holding the
+ * complete response, rebuilt only after the player index or world counts change, and written to the socket
+ * as-is; polls never encode anything or touch {@code Universe}. HTTP clients that send the last {@code ETag} back in
+ * {@code If-None-Match} get a bodiless 304 until something changes.
+ *
+ * <p>UDP replies carry counts and worlds only and fit in one {@value #MAX_DATAGRAM_BYTES}-byte datagram, dropping
+ * the least populated worlds if need be, and are only sent to requests at least as long as the reply, so the endpoint cannot be used to amplify
+ * traffic towards a spoofed source address. Clients pad requests to {@value #MAX_DATAGRAM_BYTES} bytes to be safe.
+ */
+public class StatusServer {
+
+    private static final int MAX_CONNECTIONS = 256;
+    private static final int READ_TIMEOUT_MILLIS = 5000;
+    private static final int MAX_REQUEST_BYTES = 8192;
+    private static final byte[] UDP_MAGIC = {'T', 'N', 'S', 'T'};
+    // Fits the smallest MTU worth planning for (IPv6 minimum 1280, less headers) without fragmenting.
+    static final int MAX_DATAGRAM_BYTES = 1200;
+    private static final long SEND_WARNING_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final ByteBuffer NOT_FOUND = staticResponse("404 Not Found");
+    private static final ByteBuffer NOT_ALLOWED = staticResponse("405 Method Not Allowed");
+    private static final ByteBuffer TOO_LARGE = staticResponse("431 Request Header Fields Too Large");
+
+    private final PluginContext plugin;
+    private final String bindAddress;
+    private final int port;
+    private final HeartbeatEncoder encoder = new HeartbeatEncoder();
+    private final Semaphore connections = new Semaphore(MAX_CONNECTIONS);
+    private volatile Snapshot current;
+    private ServerSocketChannel tcp;
+    private DatagramChannel udp;
+    private long lastSendWarningNanos;
+    private boolean datagramTooLargeWarned;
+
+    public StatusServer(PluginContext plugin, String bindAddress, int port) {
+        this.plugin = plugin;
+        this.bindAddress = bindAddress;
+        this.port = port;
+    }
+
+    public void start() {
+        try {
+            InetSocketAddress address = new InetSocketAddress(bindAddress, port);
+            tcp = ServerSocketChannel.open().bind(address, 128);
+            udp = DatagramChannel.open().bind(address);
+        } catch (IOException e) {
+            plugin.getPluginLogger().warning("Failed to start status endpoint on " + bindAddress + ":" + port
+                    + ": " + e.getMessage());
+            stop();
+            return;
+        }
+        plugin.getPluginLogger().info("Status endpoint listening on " + bindAddress + ":" + port + " (HTTP and UDP)");
+        // Closing the channels in stop() ends both loops.
+        plugin.getExecutors().io().execute(this::acceptLoop);
+        plugin.getExecutors().io().execute(this::datagramLoop);
+    }
+
+    public void stop() {
+        closeQuietly(tcp);
+        closeQuietly(udp);
+        tcp = null;
+        udp = null;
+    }
+
+    private void acceptLoop() {
+        ServerSocketChannel server = tcp;
+        while (server != null && server.isOpen()) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            if (!connections.tryAcquire()) {
+                closeQuietly(channel);
+                continue;
+            }
+            plugin.getExecutors().io().execute(() -> {
+                try {
+                    serve(channel);
+                } finally {
+                    connections.release();
+                }
+            });
+        }
+    }
+
+    /** Answers requests on one keep-alive connection until the client closes it or goes quiet. */
+    private void serve(SocketChannel channel) {
+        try (channel) {
+            Socket socket = channel.socket();
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            InputStream in = socket.getInputStream();
+            byte[] request = new byte[MAX_REQUEST_BYTES];
+            int filled = 0;
+            while (true) {
+                int end;
+                while ((end = headerEnd(request, filled)) < 0) {
+                    if (filled == request.length) {
+                        writeFully(channel, TOO_LARGE.duplicate());
+                        return;
+                    }
+                    int read = in.read(request, filled, request.length - filled);
+                    if (read < 0) return;
+                    filled += read;
+                }
+                if (!respond(channel, request, end)) return;
+                // Keep anything pipelined after this request.
+                System.arraycopy(request, end, request, 0, filled - end);
+                filled -= end;
+            }
+        } catch (SocketTimeoutException | ClosedChannelException ignored) {
+            // Idle client, or shutting down.
+        } catch (IOException ignored) {
+            // Client went away mid-request.
+        }
+    }
+
+    /** @return whether the connection stays open for another request */
+    private boolean respond(SocketChannel channel, byte[] request, int length) throws IOException {
+        String line = requestLine(request, length);
+        String[] parts = line.split(" ");
+        if (parts.length < 3) {
+            writeFully(channel, NOT_FOUND.duplicate());
+            return false;
+        }
+        boolean head = parts[0].equals("HEAD");
+        if (!head && !parts[0].equals("GET")) {
+            writeFully(channel, NOT_ALLOWED.duplicate());
+            return false;
+        }
+        String path = parts[1];
+        int query = path.indexOf('?');
+        if (query >= 0) path = path.substring(0, query);
+        if (!path.equals("/") && !path.equals("/status")) {
+            writeFully(channel, NOT_FOUND.duplicate());
+            return true;
+        }
+
+        Snapshot snapshot = snapshot();
+        if (matchesETag(headerValue(request, length, "If-None-Match"), snapshot.etag())) {
+            writeFully(channel, snapshot.notModified().duplicate());
+            return !parts[2].equals("HTTP/1.0");
+        }
+        ByteBuffer response = snapshot.http().duplicate();
+        if (head) {
+            response.limit(snapshot.headerLength());
+        }
+        writeFully(channel, response);
+        // HTTP/1.0 clients close after one response unless they asked otherwise; we don't negotiate.
+        return !parts[2].equals("HTTP/1.0");
+    }
+
+    private void datagramLoop() {
+        DatagramChannel channel = udp;
+        ByteBuffer in = ByteBuffer.allocate(MAX_DATAGRAM_BYTES);
+        while (channel != null && channel.isOpen()) {
+            SocketAddress from;
+            try {
+                in.clear();
+                from = channel.receive(in);
+            } catch (IOException e) {
+                if (!channel.isOpen()) return;
+                continue;
+            }
+            in.flip();
+            if (!hasMagic(in)) continue;
+            ByteBuffer reply = snapshot().datagram().duplicate();
+            // Never answer with more than was asked with: a spoofed request must not come back amplified.
+            if (in.remaining() < reply.remaining()) continue;
+            try {
+                channel.send(reply, from);
+            } catch (IOException e) {
+                if (!channel.isOpen()) return;
+                // One bad peer must not stop the endpoint, but a reply that cannot go out at all should be seen.
+                warnSendFailed(from, e);
+            }
+        }
+    }
+
+    private void warnSendFailed(SocketAddress to, IOException e) {
+        long now = System.nanoTime();
+        if (lastSendWarningNanos != 0 && now - lastSendWarningNanos < SEND_WARNING_INTERVAL_NANOS) return;
+        lastSendWarningNanos = now;
+        plugin.getPluginLogger().warning("Status endpoint could not reply to " + to + ": " + e.getMessage());
+    }
+
+    /** The current response, rebuilt first if presence changed since it was built. */
+    Snapshot snapshot() {
+        PlayerIndex.Snapshot players = plugin.getPlayerIndex().snapshot();
+        long worlds = plugin.getWorldPopulation().version();
+        Snapshot snapshot = current;
+        if (snapshot != null && snapshot.playersVersion() == players.version() && snapshot.worldsVersion() == worlds) {
+            return snapshot;
+        }
+        synchronized (this) {
+            snapshot = current;
+            if (snapshot == null || snapshot.playersVersion() != players.version()
+                    || snapshot.worldsVersion() != worlds) {
+                snapshot = build(players, worlds);
+                current = snapshot;
+            }
+            return snapshot;
+        }
+    }
+
+    private Snapshot build(PlayerIndex.Snapshot players, long worldsVersion) {
+        int maxPlayers = plugin.getMaxPlayers();
+        String motd = plugin.getMotd();
+        List<TaleNameAPI.WorldCount> worlds = plugin.getConfigManager().isWorldCountsEnabled()
+                ? plugin.getWorldPopulation().snapshot()
+                : null;
+
+        // Same presence fields as a full heartbeat, honouring the same player list cap.
+        PayloadBuffer body = new PayloadBuffer(256 + players.players().size() * 40);
+        encoder.writeHeartbeatJson(new TaleNameAPI.HeartbeatData(players.players().size(), maxPlayers, motd,
+                cappedList(players), players.version(), -1, null, null, null, null, worlds), body);
+        PayloadBuffer datagram = datagram(players, maxPlayers, worlds);
+
+        String etag = "\"" + players.version() + "-" + worldsVersion + "\"";
+        String validators = "ETag: " + etag + "\r\n"
+                + "Cache-Control: max-age=1\r\n";
+        byte[] headers = ("HTTP/1.1 200 OK\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + body.length() + "\r\n"
+                + validators
+                + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer http = ByteBuffer.allocateDirect(headers.length + body.length());
+        http.put(headers).put(body.array(), 0, body.length()).flip();
+        byte[] notModified = ("HTTP/1.1 304 Not Modified\r\n" + validators + "\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer udpBody = ByteBuffer.allocateDirect(datagram.length());
+        udpBody.put(datagram.array(), 0, datagram.length()).flip();
+        return new Snapshot(players.version(), worldsVersion, etag, http.asReadOnlyBuffer(), headers.length,
+                ByteBuffer.allocateDirect(notModified.length).put(notModified).flip().asReadOnlyBuffer(),
+                udpBody.asReadOnlyBuffer());
+    }
+
+    /** Counts and worlds only, cut to the busiest worlds that fit in one datagram; never the MOTD. */
+    private PayloadBuffer datagram(PlayerIndex.Snapshot players, int maxPlayers, List<TaleNameAPI.WorldCount> worlds) {
+        if (worlds != null) {
+            worlds = new ArrayList<>(worlds);
+            worlds.sort(Comparator.comparingInt(TaleNameAPI.WorldCount::players).reversed());
+        }
+        while (true) {
+            PayloadBuffer datagram = new PayloadBuffer(256);
+            encoder.writeHeartbeatJson(new TaleNameAPI.HeartbeatData(players.players().size(), maxPlayers, null,
+                    null, players.version(), -1, null, null, null, null, worlds), datagram);
+            int overflow = datagram.length() - MAX_DATAGRAM_BYTES;
+            if (overflow <= 0) {
+                return datagram;
+            }
+            if (worlds != null) {
+                // Halving keeps this to a few passes even with thousands of worlds.
+                worlds = worlds.size() > 1 ? worlds.subList(0, worlds.size() / 2) : null;
+            } else {
+                // Nothing left to drop. Requests are received into a buffer of this size, so none can be
+                // long enough for this reply, and UDP stays silent until the status shrinks.
+                if (!datagramTooLargeWarned) {
+                    datagramTooLargeWarned = true;
+                    plugin.getPluginLogger().warning("Status datagram is " + datagram.length() + " bytes even "
+                            + "without worlds; UDP status requests will not be answered");
+                }
+                return datagram;
+            }
+        }
+    }
+
+    private List<UUID> cappedList(PlayerIndex.Snapshot players) {
+        int cap = plugin.getConfigManager().getPlayerListCap();
+        if (cap <= 0 || players.players().size() <= cap) {
+            return new ArrayList<>(players.players());
+        }
+        if (!plugin.getConfigManager().isPlayerListTruncated()) {
+            return null;
+        }
+        List<UUID> list = new ArrayList<>(cap);
+        for (UUID player : players.players()) {
+            if (list.size() == cap) break;
+            list.add(player);
+        }
+        return list;
+    }
+
+    /** Whether an {@code If-None-Match} value names {@code etag}; weak tags compare like strong ones for a GET. */
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+            if (candidate.equals("*") || candidate.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    /** @return the value of the first header named {@code name} (any case), or null */
+    private static String headerValue(byte[] request, int length, String name) {
+        String headers = new String(request, 0, length, StandardCharsets.US_ASCII);
+        int start = headers.indexOf("\r\n") + 2;
+        while (start > 1 && start < headers.length()) {
+            int end = headers.indexOf("\r\n", start);
+            if (end <= start) return null;
+            int colon = headers.indexOf(':', start);
+            if (colon > start && colon < end && headers.regionMatches(true, start, name, 0, name.length())
+                    && colon - start == name.length()) {
+                return headers.substring(colon + 1, end).trim();
+            }
+            start = end + 2;
+        }
+        return null;
+    }
+
+    private static boolean hasMagic(ByteBuffer in) {
+        if (in.remaining() < UDP_MAGIC.length) return false;
+        for (int i = 0; i < UDP_MAGIC.length; i++) {
+            if (in.get(i) != UDP_MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    /** @return the offset just past the blank line ending the request headers, or -1 if not there yet */
+    private static int headerEnd(byte[] buffer, int length) {
+        for (int i = 3; i < length; i++) {
+            if (buffer[i] == '\n' && buffer[i - 1] == '\r' && buffer[i - 2] == '\n' && buffer[i - 3] == '\r') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static String requestLine(byte[] request, int length) {
+        int end = 0;
+        while (end < length && request[end] != '\r') end++;
+        return new String(request, 0, end, StandardCharsets.US_ASCII);
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer staticResponse(String status) {
+        byte[] bytes = ("HTTP/1.1 " + status + "\r\nContent-Length: 0\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        return ByteBuffer.allocateDirect(bytes.length).put(bytes).flip().asReadOnlyBuffer();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * @param http         complete HTTP response, headers and body
+     * @param headerLength bytes of {@code http} that are headers, for HEAD requests
+     * @param notModified  the 304 answer to a request already holding {@code etag}
+     * @param datagram     the UDP reply
+     */
+    record Snapshot(long playersVersion, long worldsVersion, String etag, ByteBuffer http, int headerLength,
+                    ByteBuffer notModified, ByteBuffer datagram) {}
+}
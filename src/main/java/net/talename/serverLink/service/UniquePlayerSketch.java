@@ -0,0 +1,86 @@
+package net.talename.serverLink.service;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * HyperLogLog sketch of distinct player UUIDs: a fixed {@code 2^precision}-byte register array,
+ * about {@code 1.04 / sqrt(2^precision)} relative error, whatever the number of players added.
+ * Sketches of the same precision merge by taking the larger register.
+ */
+public class UniquePlayerSketch {
+
+    private final int precision;
+    private final byte[] registers;
+
+    public UniquePlayerSketch(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("precision must be 4-16");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public void add(UUID player) {
+        long hash = hash(player);
+        int index = (int) (hash >>> (64 - precision));
+        // Rank of the first set bit in the remaining bits; the sentinel bit caps it for all-zero tails.
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    public void merge(UniquePlayerSketch other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("precision mismatch");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(registers, (byte) 0);
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) zeros++;
+        }
+        double alpha = m >= 128 ? 0.7213 / (1 + 1.079 / m) : m == 64 ? 0.709 : m == 32 ? 0.697 : 0.673;
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // Small-range correction: linear counting.
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public int precision() {
+        return precision;
+    }
+
+    /** The raw registers, one byte each. Always {@code 2^precision} bytes. */
+    public byte[] toBytes() {
+        return registers.clone();
+    }
+
+    private static long hash(UUID player) {
+        // Random (v4) UUIDs are already well mixed, but not every UUID is random; fmix64 from MurmurHash3.
+        long h = player.getMostSignificantBits() * 0x9E3779B97F4A7C15L ^ player.getLeastSignificantBits();
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85349L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,79 @@
+package net.talename.serverLink.service;
+
+import net.talename.serverLink.api.TaleNameAPI;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Rolling unique-player counts over the last hour and the last day, as rings of {@link UniquePlayerSketch}
+ * buckets (12 x 5 minutes, 24 x 1 hour). Memory is fixed at 36 sketches plus two scratch sketches.
+ * A new bucket is seeded with everyone online, so players who stay connected across a boundary still count.
+ */
+public class UniquePlayerTracker {
+
+    public static final int PRECISION = 11;
+
+    private final Window hour = new Window(12, TimeUnit.MINUTES.toMillis(5));
+    private final Window day = new Window(24, TimeUnit.HOURS.toMillis(1));
+    private final Supplier<Collection<UUID>> online;
+
+    public UniquePlayerTracker(Supplier<Collection<UUID>> online) {
+        this.online = online;
+    }
+
+    public synchronized void playerJoined(UUID player) {
+        long now = System.currentTimeMillis();
+        hour.current(now).add(player);
+        day.current(now).add(player);
+    }
+
+    /** Union of each window, as fixed-size register arrays. */
+    public synchronized TaleNameAPI.UniquePlayers snapshot() {
+        long now = System.currentTimeMillis();
+        return new TaleNameAPI.UniquePlayers(PRECISION, hour.union(now), day.union(now));
+    }
+
+    private final class Window {
+        private final UniquePlayerSketch[] buckets;
+        private final long bucketMillis;
+        private final UniquePlayerSketch scratch = new UniquePlayerSketch(PRECISION);
+        private long currentBucket = -1;
+
+        Window(int size, long bucketMillis) {
+            this.buckets = new UniquePlayerSketch[size];
+            for (int i = 0; i < size; i++) {
+                buckets[i] = new UniquePlayerSketch(PRECISION);
+            }
+            this.bucketMillis = bucketMillis;
+        }
+
+        UniquePlayerSketch current(long now) {
+            long bucket = now / bucketMillis;
+            if (bucket != currentBucket) {
+                // Clear every slot skipped since the last update, at most the whole ring.
+                long from = currentBucket < 0 ? bucket - buckets.length + 1 : currentBucket + 1;
+                for (long b = Math.max(from, bucket - buckets.length + 1); b <= bucket; b++) {
+                    buckets[(int) (b % buckets.length)].clear();
+                }
+                currentBucket = bucket;
+                UniquePlayerSketch fresh = buckets[(int) (bucket % buckets.length)];
+                for (UUID player : online.get()) {
+                    fresh.add(player);
+                }
+            }
+            return buckets[(int) (bucket % buckets.length)];
+        }
+
+        byte[] union(long now) {
+            current(now);
+            scratch.clear();
+            for (UniquePlayerSketch bucket : buckets) {
+                scratch.merge(bucket);
+            }
+            return scratch.toBytes();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package net.talename.serverLink.service;
+
+import net.talename.serverLink.api.TaleNameAPI;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Players per world, kept from world add/drain events so heartbeats never scan the worlds. Each tracked world
+ * gets a dense int id, and counts live in an {@code int[]} indexed by it; a world's id is recycled once its count
+ * returns to zero, so short-lived instance worlds do not accumulate. A transfer is a drain from one world and an
+ * add to another, possibly on different world threads, so a drain can be seen before the add it undoes: the count
+ * then goes negative until the add arrives, and only positive counts are reported.
+ *
+ * <p>Events name their world, so the name lookup happens once per event; heartbeats only walk the arrays.
+ */
+public class WorldPopulation {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] names = new String[8];
+    private int[] counts = new int[8];
+    private int[] free = new int[8];
+    private int freeCount;
+    private int nextId;
+    private volatile long version;
+
+    public synchronized void playerAdded(String world) {
+        adjust(world, 1);
+    }
+
+    public synchronized void playerRemoved(String world) {
+        adjust(world, -1);
+    }
+
+    /** Replaces every count with a full scan, e.g. on start when players may already be in worlds. */
+    public synchronized void seed(Map<String, Integer> scan) {
+        ids.clear();
+        Arrays.fill(names, null);
+        Arrays.fill(counts, 0);
+        freeCount = 0;
+        nextId = 0;
+        scan.forEach((world, players) -> {
+            if (players > 0) {
+                int id = idFor(world);
+                counts[id] = players;
+            }
+        });
+        version++;
+    }
+
+    /** Changes whenever any count does; cheap to poll without taking the lock. */
+    public long version() {
+        return version;
+    }
+
+    /** Occupied worlds and their counts. */
+    public synchronized List<TaleNameAPI.WorldCount> snapshot() {
+        List<TaleNameAPI.WorldCount> worlds = new ArrayList<>(ids.size());
+        for (int id = 0; id < nextId; id++) {
+            // Negative counts are drains still waiting for their add.
+            if (names[id] != null && counts[id] > 0) {
+                worlds.add(new TaleNameAPI.WorldCount(names[id], counts[id]));
+            }
+        }
+        return worlds;
+    }
+
+    /**
+     * Compares the counters with a full scan.
+     *
+     * @return one line per world whose count differs, empty if they agree
+     */
+    public synchronized List<String> verify(Map<String, Integer> scan) {
+        List<String> mismatches = new ArrayList<>();
+        Map<String, Integer> remaining = new HashMap<>(scan);
+        for (int id = 0; id < nextId; id++) {
+            if (names[id] == null) continue;
+            int scanned = remaining.getOrDefault(names[id], 0);
+            remaining.remove(names[id]);
+            if (scanned != counts[id]) {
+                mismatches.add(names[id] + ": counted " + counts[id] + ", scanned " + scanned);
+            }
+        }
+        remaining.forEach((world, scanned) -> {
+            if (scanned != 0) mismatches.add(world + ": counted 0, scanned " + scanned);
+        });
+        return mismatches;
+    }
+
+    /**
+     * Counts players in every world the slow way, for {@link #seed} and {@link #verify}.
+     *
+     * @param name    a world's name, as world events report it
+     * @param players how many players a world holds
+     */
+    public static <W> Map<String, Integer> scan(Iterable<W> worlds, Function<W, String> name,
+                                                ToIntFunction<W> players) {
+        Map<String, Integer> scan = new HashMap<>();
+        for (W world : worlds) {
+            scan.merge(name.apply(world), players.applyAsInt(world), Integer::sum);
+        }
+        return scan;
+    }
+
+    private void adjust(String world, int delta) {
+        // idFor may grow the arrays, so it must run before counts is read.
+        int id = idFor(world);
+        counts[id] += delta;
+        if (counts[id] == 0) {
+            release(world, id);
+        }
+        version++;
+    }
+
+    private int idFor(String world) {
+        Integer id = ids.get(world);
+        if (id != null) return id;
+
+        int assigned = freeCount > 0 ? free[--freeCount] : nextId++;
+        if (assigned == names.length) {
+            names = Arrays.copyOf(names, assigned * 2);
+            counts = Arrays.copyOf(counts, assigned * 2);
+            free = Arrays.copyOf(free, assigned * 2);
+        }
+        ids.put(world, assigned);
+        names[assigned] = world;
+        counts[assigned] = 0;
+        return assigned;
+    }
+
+    private void release(String world, int id) {
+        ids.remove(world);
+        names[id] = null;
+        counts[id] = 0;
+        free[freeCount++] = id;
+    }
+}
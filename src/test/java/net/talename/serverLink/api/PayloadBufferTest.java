@@ -0,0 +1,84 @@
+package net.talename.serverLink.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class PayloadBufferTest {
+
+    @Test
+    void jsonStringIsValidUtf8() {
+        String[] samples = {
+                "plain", "café", "世界", "emoji 🎉", "quote \" backslash \\ tab \t",
+                // Lone surrogates: high at the end, high before a non-surrogate, low on its own, reversed pair.
+                "end \uD83C", "\uD83Cx", "x\uDF89y", "\uDF89\uD83C",
+        };
+        for (String sample : samples) {
+            PayloadBuffer buffer = new PayloadBuffer(16);
+            buffer.writeJsonString(sample);
+            byte[] written = Arrays.copyOf(buffer.array(), buffer.length());
+            assertArrayEquals(expectedJson(sample), written, "encoding of " + sample.codePoints().boxed().toList());
+        }
+    }
+
+    @Test
+    void copiedPublisherIsUnaffectedByReuse() {
+        PayloadBuffer buffer = new PayloadBuffer(16);
+        buffer.writeAscii("first");
+        HttpRequest.BodyPublisher publisher = buffer.publisherCopy();
+        buffer.reset();
+        buffer.writeAscii("other");
+        assertArrayEquals("first".getBytes(StandardCharsets.US_ASCII), collect(publisher));
+    }
+
+    /** Reads a publisher the way the HTTP client does, synchronously. */
+    private static byte[] collect(HttpRequest.BodyPublisher publisher) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            public void onNext(ByteBuffer item) {
+                byte[] chunk = new byte[item.remaining()];
+                item.get(chunk);
+                out.writeBytes(chunk);
+            }
+
+            public void onError(Throwable throwable) {
+                throw new AssertionError(throwable);
+            }
+
+            public void onComplete() {
+            }
+        });
+        return out.toByteArray();
+    }
+
+    /** The escaped literal in UTF-8, with every lone surrogate replaced by U+FFFD. */
+    private static byte[] expectedJson(String s) {
+        StringBuilder escaped = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                escaped.append(c).append(s.charAt(++i));
+            } else if (Character.isSurrogate(c)) {
+                escaped.append('\uFFFD');
+            } else if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.append('"').toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
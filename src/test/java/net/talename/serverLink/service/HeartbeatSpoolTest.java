@@ -0,0 +1,104 @@
+package net.talename.serverLink.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeartbeatSpoolTest {
+
+    private static final Logger LOGGER = Logger.getLogger("TaleName-SpoolTest");
+    // Header, then the first record's length field.
+    private static final int FIRST_RECORD = 64;
+
+    @Test
+    void recordsSurviveReopen() throws IOException {
+        Path file = Files.createTempFile("talename-spool", ".dat");
+        HeartbeatSpool spool = new HeartbeatSpool(file, 8192, LOGGER);
+        spool.append(1, body("first"));
+        spool.append(2, body("second"));
+        spool.close();
+
+        HeartbeatSpool reopened = new HeartbeatSpool(file, 8192, LOGGER);
+        List<HeartbeatSpool.SpooledHeartbeat> records = reopened.peek(10);
+        assertEquals(2, records.size());
+        assertEquals("second", new String(records.get(1).body(), StandardCharsets.UTF_8));
+        reopened.commit(records.get(0));
+        assertEquals(1, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    void corruptLengthEmptiesTheSpool() throws IOException {
+        Path file = Files.createTempFile("talename-spool", ".dat");
+        HeartbeatSpool spool = new HeartbeatSpool(file, 8192, LOGGER);
+        spool.append(1, body("first"));
+        spool.append(2, body("second"));
+        spool.close();
+        overwriteInt(file, FIRST_RECORD, Integer.MAX_VALUE);
+
+        HeartbeatSpool reopened = new HeartbeatSpool(file, 8192, LOGGER);
+        assertEquals(List.of(), reopened.peek(10));
+        assertTrue(reopened.isEmpty());
+        // Still usable afterwards.
+        assertTrue(reopened.append(3, body("third")));
+        assertEquals(1, reopened.peek(10).size());
+        reopened.close();
+    }
+
+    @Test
+    void corruptLengthWhileEvictingEmptiesTheSpool() throws IOException {
+        Path file = Files.createTempFile("talename-spool", ".dat");
+        HeartbeatSpool spool = new HeartbeatSpool(file, 4096, LOGGER);
+        spool.append(1, body("first"));
+        spool.close();
+        overwriteInt(file, FIRST_RECORD, -5);
+
+        HeartbeatSpool reopened = new HeartbeatSpool(file, 4096, LOGGER);
+        // Large enough to force an eviction of the damaged record.
+        assertTrue(reopened.append(2, new byte[4020]));
+        List<HeartbeatSpool.SpooledHeartbeat> records = reopened.peek(10);
+        assertEquals(1, records.size());
+        assertEquals(2L, records.get(0).timestamp());
+        reopened.close();
+    }
+
+    @Test
+    void commitAfterDiscardKeepsNewRecords() throws IOException {
+        Path file = Files.createTempFile("talename-spool", ".dat");
+        HeartbeatSpool spool = new HeartbeatSpool(file, 8192, LOGGER);
+        spool.append(1, body("first"));
+        spool.append(2, body("second"));
+        List<HeartbeatSpool.SpooledHeartbeat> inFlight = spool.peek(1);
+        spool.close();
+        overwriteInt(file, FIRST_RECORD, Integer.MAX_VALUE);
+
+        HeartbeatSpool reopened = new HeartbeatSpool(file, 8192, LOGGER);
+        assertEquals(List.of(), reopened.peek(10));
+        reopened.append(3, body("third"));
+        // A replay that read the damaged spool commits late; the record appended since must stay.
+        reopened.commit(inFlight.get(0));
+        assertEquals(1, reopened.size());
+        reopened.close();
+    }
+
+    private static byte[] body(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void overwriteInt(Path file, long position, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, value), position);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package net.talename.serverLink.service;
+
+import net.talename.serverLink.api.TaleNameAPI;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Feeds {@link WorldPopulation} the add/drain events the world listeners deliver, in the orders world threads can
+ * deliver them, and checks the counters against a full scan of where every player ended up.
+ */
+class WorldPopulationTest {
+
+    /** Where each player is; scanned with {@link WorldPopulation#scan} the way the plugin scans its worlds. */
+    private final Map<String, Integer> where = new HashMap<>();
+
+    @Test
+    void transfersMatchScan() {
+        WorldPopulation population = new WorldPopulation();
+        List<Event> events = new ArrayList<>();
+        move(events, null, "default");
+        move(events, null, "default");
+        move(events, "default", "arena");
+        move(events, null, "arena");
+        move(events, "default", null);
+        deliver(population, events);
+
+        assertMatchesScan(population);
+        assertEquals(List.of(new TaleNameAPI.WorldCount("arena", 2)), population.snapshot());
+    }
+
+    @Test
+    void drainBeforeItsAddIsNotLost() {
+        WorldPopulation population = new WorldPopulation();
+        List<Event> events = new ArrayList<>();
+        move(events, null, "default");
+        move(events, "default", "instance-1");
+        move(events, "instance-1", "default");
+        // The instance world's thread is slower than the default world's: its drain overtakes its add.
+        Collections.swap(events, 2, 3);
+        assertEquals(new Event(false, "instance-1"), events.get(2));
+
+        for (int i = 0; i < 3; i++) {
+            events.get(i).deliver(population);
+        }
+        for (TaleNameAPI.WorldCount world : population.snapshot()) {
+            assertTrue(world.players() > 0, "snapshot reported " + world);
+        }
+        for (int i = 3; i < events.size(); i++) {
+            events.get(i).deliver(population);
+        }
+        assertMatchesScan(population);
+        assertEquals(List.of(new TaleNameAPI.WorldCount("default", 1)), population.snapshot());
+    }
+
+    @Test
+    void anyDeliveryOrderMatchesScan() {
+        Random random = new Random(20);
+        for (int round = 0; round < 200; round++) {
+            where.clear();
+            WorldPopulation population = new WorldPopulation();
+            List<Event> events = new ArrayList<>();
+            String[] location = new String[30];
+            for (int i = 0; i < 500; i++) {
+                int player = random.nextInt(location.length);
+                String target = random.nextInt(8) == 0 ? null : "world-" + random.nextInt(12);
+                move(events, location[player], target);
+                location[player] = target;
+            }
+            Collections.shuffle(events, random);
+            deliver(population, events);
+
+            assertMatchesScan(population);
+        }
+    }
+
+    @Test
+    void seedThenEventsMatchScan() {
+        WorldPopulation population = new WorldPopulation();
+        List<Event> events = new ArrayList<>();
+        move(events, null, "default");
+        move(events, null, "default");
+        move(events, null, "arena");
+        // Players already in worlds when the plugin loads are only seen by the scan.
+        population.seed(scan());
+
+        events.clear();
+        move(events, "arena", "default");
+        move(events, "default", null);
+        deliver(population, events);
+
+        assertMatchesScan(population);
+        assertEquals(List.of(new TaleNameAPI.WorldCount("default", 2)), population.snapshot());
+    }
+
+    @Test
+    void recycledIdsKeepCountsApart() {
+        WorldPopulation population = new WorldPopulation();
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            move(events, null, "instance-" + i);
+        }
+        for (int i = 0; i < 40; i += 2) {
+            move(events, "instance-" + i, "default");
+        }
+        for (int i = 40; i < 60; i++) {
+            move(events, null, "instance-" + i);
+        }
+        deliver(population, events);
+
+        assertMatchesScan(population);
+        assertEquals(41, population.snapshot().size());
+    }
+
+    @Test
+    void concurrentTransfersMatchScan() throws InterruptedException {
+        int threads = 8;
+        int worlds = 20;
+        WorldPopulation population = new WorldPopulation();
+        // Where each player is, or null when offline; each thread owns its own slice.
+        String[][] location = new String[threads][200];
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong badSnapshots = new AtomicLong();
+        AtomicReference<Throwable> crash = new AtomicReference<>();
+        Thread.Builder builder = Thread.ofPlatform().uncaughtExceptionHandler((thread, e) -> crash.set(e));
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String[] mine = location[t];
+            workers.add(builder.start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    int player = random.nextInt(mine.length);
+                    String target = random.nextInt(10) == 0 ? null : "world-" + random.nextInt(worlds);
+                    if (mine[player] != null) {
+                        population.playerRemoved(mine[player]);
+                    }
+                    if (target != null) {
+                        population.playerAdded(target);
+                    }
+                    mine[player] = target;
+                }
+            }));
+        }
+        workers.add(builder.start(() -> {
+            int total = threads * location[0].length;
+            while (running.get()) {
+                int sum = 0;
+                for (TaleNameAPI.WorldCount world : population.snapshot()) {
+                    sum += world.players();
+                    if (world.players() <= 0) badSnapshots.incrementAndGet();
+                }
+                if (sum > total) badSnapshots.incrementAndGet();
+            }
+        }));
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(2));
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertNull(crash.get());
+        assertEquals(0, badSnapshots.get(), "snapshots with impossible counts");
+        for (String[] slice : location) {
+            for (String world : slice) {
+                if (world != null) where.merge(world, 1, Integer::sum);
+            }
+        }
+        assertMatchesScan(population);
+    }
+
+    /** Records one player's move as the listeners see it: a drain from {@code from}, then an add to {@code to}. */
+    private void move(List<Event> events, String from, String to) {
+        if (from != null) {
+            events.add(new Event(false, from));
+            where.merge(from, -1, Integer::sum);
+        }
+        if (to != null) {
+            events.add(new Event(true, to));
+            where.merge(to, 1, Integer::sum);
+        }
+    }
+
+    private static void deliver(WorldPopulation population, List<Event> events) {
+        events.forEach(event -> event.deliver(population));
+    }
+
+    private Map<String, Integer> scan() {
+        List<World> worlds = new ArrayList<>();
+        where.forEach((name, players) -> worlds.add(new World(name, players)));
+        // Empty worlds are part of a real scan too.
+        worlds.add(new World("empty", 0));
+        return WorldPopulation.scan(worlds, World::name, World::players);
+    }
+
+    private void assertMatchesScan(WorldPopulation population) {
+        List<String> mismatches = population.verify(scan());
+        assertTrue(mismatches.isEmpty(), () -> "counters differ from scan: " + mismatches);
+    }
+
+    private record World(String name, int players) {}
+
+    /** An AddPlayerToWorldEvent or DrainPlayerFromWorldEvent, reduced to what the listeners read from it. */
+    private record Event(boolean add, String world) {
+        void deliver(WorldPopulation population) {
+            if (add) {
+                population.playerAdded(world);
+            } else {
+                population.playerRemoved(world);
+            }
+        }
+    }
+}